@@ -0,0 +1,145 @@
+package com.xbot.parser;
+
+import com.xbot.model.User;
+import com.xbot.model.UserIndex;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message extraction on pre-parsed message elements: the previous
+ * clone + CSS select routine against {@link HtmlChatParser#processMessage}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HtmlChatParserBenchmark {
+
+    private static final int MESSAGES = 1000;
+
+    private final HtmlChatParser parser = new HtmlChatParser();
+    private final List<Element> messages = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        StringBuilder html = new StringBuilder("<html><body><div class=\"history\">");
+        for (int i = 0; i < MESSAGES; i++) {
+            html.append("<div class=\"message default clearfix\" id=\"message").append(i).append("\">")
+                    .append("<div class=\"body\">")
+                    .append("<div class=\"pull_right date details\" title=\"01.01.2024 10:00:00 UTC+03:00\">10:00</div>")
+                    .append("<div class=\"from_name\">Пользователь ").append(i % 200).append("</div>");
+            if (i % 10 == 0) {
+                html.append("<div class=\"forwarded body\">")
+                        .append("<div class=\"from_name\">Автор <span class=\"date details\">01.01.2024</span></div>")
+                        .append("</div>");
+            }
+            html.append("<div class=\"text\">Привет, <a href=\"https://t.me/user").append(i % 50).append("\">@user")
+                    .append(i % 50).append("</a> и <a href=\"tg://user?id=").append(1000 + i % 30).append("\">Друг</a>")
+                    .append(" <a href=\"https://example.com\">ссылка</a></div>")
+                    .append("</div></div>");
+        }
+        html.append("</div></body></html>");
+
+        for (Element msg : Jsoup.parse(html.toString()).select("div.message")) {
+            messages.add(msg);
+        }
+    }
+
+    @Benchmark
+    public void cloneAndSelect(Blackhole blackhole) {
+        Set<User> participants = new HashSet<>();
+        Set<User> mentions = new HashSet<>();
+        for (Element msg : messages) {
+            LegacyExtraction.processMessage(msg, participants, mentions);
+        }
+        blackhole.consume(participants);
+        blackhole.consume(mentions);
+    }
+
+    @Benchmark
+    public void singlePass(Blackhole blackhole) {
+        UserIndex users = new UserIndex();
+        HtmlChatParser.MessageScan scan = new HtmlChatParser.MessageScan();
+        for (Element msg : messages) {
+            parser.processMessage(msg, scan, users);
+        }
+        blackhole.consume(users);
+    }
+
+    /**
+     * Copy of the per-message code HtmlChatParser used before the single-pass walk.
+     */
+    private static final class LegacyExtraction {
+
+        static void processMessage(Element msg, Set<User> participants, Set<User> mentions) {
+            if (msg.hasClass("service")) {
+                return;
+            }
+            Element fromElement = msg.selectFirst("div.from_name");
+            if (fromElement == null) {
+                return;
+            }
+            Element clone = fromElement.clone();
+            clone.select("span.date").remove();
+            String displayName = clone.text().trim();
+            if (displayName.isEmpty() || isDeletedAccount(displayName)) {
+                return;
+            }
+            participants.add(new User(displayName));
+            extractMentionsFromLinks(msg, mentions);
+        }
+
+        private static boolean isDeletedAccount(String displayName) {
+            return displayName.toLowerCase().contains("deleted account")
+                    || displayName.toLowerCase().contains("удалённый аккаунт");
+        }
+
+        private static void extractMentionsFromLinks(Element msg, Set<User> mentions) {
+            Elements links = msg.select("div.text a[href]");
+            for (Element link : links) {
+                String href = link.attr("href");
+                if (href.startsWith("tg://user?id=")) {
+                    String idString = href.replace("tg://user?id=", "");
+                    if (!idString.isEmpty() && idString.chars().allMatch(Character::isDigit)) {
+                        String text = link.text().trim();
+                        mentions.add(new User("user" + idString, null, text, text));
+                    }
+                } else if (href.startsWith("https://t.me/") || href.startsWith("http://t.me/")) {
+                    String username = href.replaceFirst("https?://t\\.me/", "");
+                    if (!username.isEmpty() && !username.contains("/")) {
+                        String text = link.text().trim();
+                        String displayName;
+                        if (text.startsWith("@")) {
+                            displayName = text.substring(1);
+                        } else if (text.startsWith("https://t.me/") || text.startsWith("http://t.me/")) {
+                            displayName = username;
+                        } else {
+                            displayName = text;
+                        }
+                        mentions.add(new User(username, username, displayName, displayName));
+                    }
+                }
+            }
+        }
+    }
+}
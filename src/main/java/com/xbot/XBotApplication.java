@@ -23,7 +23,7 @@ public class XBotApplication {
             log.info("Configuration loaded. Bot username: {}", config.getBotUsername());
 
             // Create services (manual DI)
-            ExcelGenerator excelGenerator = new ExcelGenerator();
+            ExcelGenerator excelGenerator = new ExcelGenerator(config.getExcelRowWindow(), config.getExcelAutoSizeMaxRows());
 
             // Create bot with all dependencies
             XBot bot = new XBot(config, excelGenerator);
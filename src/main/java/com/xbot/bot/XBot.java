@@ -1,16 +1,24 @@
 package com.xbot.bot;
 
+import com.xbot.exception.FileParseException;
+import com.xbot.model.ExtractionResult;
 import com.xbot.model.UploadedFile;
 import com.xbot.model.User;
-import com.xbot.parser.ParserException;
 import com.xbot.util.Constants;
+import com.xbot.util.SpillingOutputStream;
 import com.xbot.config.AppConfig;
 import com.xbot.exception.FileSizeLimitExceededException;
 import com.xbot.exception.InvalidFileFormatException;
-import com.xbot.parser.ParserFactory;
+import com.xbot.service.ChatParsingService;
+import com.xbot.service.DownloadLimiter;
 import com.xbot.service.ExcelGenerator;
 import com.xbot.service.FileUploadService;
+import com.xbot.service.OutputFormat;
+import com.xbot.service.PacedMessageSender;
+import com.xbot.service.ProcessingScheduler;
+import com.xbot.service.ResultWriters;
 import com.xbot.service.SessionService;
+import com.xbot.service.TextResultRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
@@ -25,13 +33,19 @@ import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 
 import java.io.File;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -42,10 +56,18 @@ public class XBot implements LongPollingSingleThreadUpdateConsumer, SessionServi
     private final AppConfig config;
     private final ExcelGenerator excelGenerator;
     private final TelegramClient telegramClient;
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    // Загрузки идут на виртуальных потоках, число одновременных ограничивает downloadLimiter
+    private final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+    private final DownloadLimiter downloadLimiter;
 
     private final SessionService sessionService;
     private final FileUploadService fileUploadService;
+    private final ChatParsingService chatParsingService;
+    private final ResultWriters resultWriters;
+    private final TextResultRenderer textResultRenderer = new TextResultRenderer();
+    private final PacedMessageSender pacedMessageSender;
+    // Формат вывода, выбранный пользователем через /format; нет записи - автоматический выбор
+    private final Map<Long, OutputFormat> outputFormats = new ConcurrentHashMap<>();
 
     private static final Logger log = LoggerFactory.getLogger(XBot.class);
 
@@ -57,8 +79,16 @@ public class XBot implements LongPollingSingleThreadUpdateConsumer, SessionServi
         this.telegramClient = new OkHttpTelegramClient(config.getBotToken());
 
         // Инициализируем сервисы
-        this.sessionService = new SessionService(config.getMaxFilesPerUser(), config.getSessionTimeoutMinutes(), config.getProcessingTimeoutMs());
+        this.sessionService = new SessionService(config.getMaxFilesPerUser(), config.getSessionTimeoutMinutes(), config.getProcessingTimeoutMs(),
+                new ProcessingScheduler(config.getProcessingWorkers(), config.getProcessingQueueCapacity(),
+                        ProcessingScheduler.heapBudget(config.getProcessingHeapPercent())));
         this.fileUploadService = new FileUploadService(telegramClient, sessionService, config.getMaxFileSizeBytes());
+        this.chatParsingService = new ChatParsingService(config.getParserThreads(),
+                config.getMaxUnpackedSizeBytes(), config.getMaxArchiveEntries(), config.getParserQueueCapacity(),
+                ProcessingScheduler.heapBudget(config.getParserHeapPercent()));
+        this.resultWriters = new ResultWriters(excelGenerator, config.getCsvOutputThreshold());
+        this.pacedMessageSender = new PacedMessageSender(telegramClient);
+        this.downloadLimiter = new DownloadLimiter(config.getMaxConcurrentDownloads(), config.getMaxDownloadsPerUser());
 
         this.sessionService.setProcessingCallback(this);
         // Добавляем shutdown hook для очистки временных файлов
@@ -66,6 +96,8 @@ public class XBot implements LongPollingSingleThreadUpdateConsumer, SessionServi
             this.sessionService.stopAllTimers();
             this.sessionService.cleanAllFiles();
             this.fileUploadService.deleteTempDir();
+            this.chatParsingService.shutdown();
+            this.pacedMessageSender.shutdown();
             executorService.shutdown();
             try {
                 if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
@@ -105,7 +137,7 @@ public class XBot implements LongPollingSingleThreadUpdateConsumer, SessionServi
 
         // Обработка команд
         if (text != null && text.startsWith("/")) {
-            handleCommand(chatId, text, message.getFrom().getFirstName());
+            handleCommand(chatId, userId, text, message.getFrom().getFirstName());
         } else if (message.hasDocument()) {
             handleDocumentMessage(chatId, userId, message.getDocument());
         } else {
@@ -113,8 +145,9 @@ public class XBot implements LongPollingSingleThreadUpdateConsumer, SessionServi
         }
     }
 
-    private void handleCommand(Long chatId, String command, String userName) {
-        String cmd = command.split(" ")[0].toLowerCase();
+    private void handleCommand(Long chatId, Long userId, String command, String userName) {
+        String[] parts = command.trim().split("\\s+", 2);
+        String cmd = parts[0].toLowerCase();
 
         switch (cmd) {
             case Constants.START_CMD:
@@ -123,11 +156,32 @@ public class XBot implements LongPollingSingleThreadUpdateConsumer, SessionServi
             case Constants.HELP_CMD:
                 sendHelpMessage(chatId);
                 break;
+            case Constants.FORMAT_CMD:
+                handleFormatCommand(chatId, userId, parts.length > 1 ? parts[1] : null);
+                break;
             default:
                 sendMessage(chatId, Constants.UNKNOWN_MSG_ANSWER);
         }
     }
 
+    private void handleFormatCommand(Long chatId, Long userId, String argument) {
+        if (argument != null && !argument.isBlank()) {
+            if ("auto".equalsIgnoreCase(argument.trim())) {
+                outputFormats.remove(userId);
+            } else {
+                OutputFormat format = OutputFormat.fromName(argument);
+                if (format == null) {
+                    sendMessage(chatId, String.format(Constants.ERROR_UNKNOWN_FORMAT, argument.trim()));
+                    return;
+                }
+                outputFormats.put(userId, format);
+            }
+        }
+        OutputFormat current = outputFormats.get(userId);
+        sendMessage(chatId, String.format(Constants.FORMAT_MSG,
+                current != null ? current.extension() : Constants.FORMAT_AUTO));
+    }
+
     private void handleDocumentMessage(Long chatId, Long userId, Document document) {
 
         // Проверяем количество уже загруженных файлов
@@ -156,13 +210,20 @@ public class XBot implements LongPollingSingleThreadUpdateConsumer, SessionServi
         }
         // Обрабатываем файл асинхронно
         executorService.submit(() -> {
-            try {
+            try (DownloadLimiter.Permit ignored = downloadLimiter.acquire(userId)) {
                 fileUploadService.downloadFile(userId, chatId, document);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Download for user {} was interrupted", userId);
             } catch (InvalidFileFormatException e) {
                 sendMessage(chatId, Constants.ERROR_MSG_WRONG_FORMAT);
             } catch (FileSizeLimitExceededException e) {
                 sendMessage(chatId, String.format(Constants.ERROR_MSG_MAX_FILE_SIZE,
                         document.getFileName(), config.getMaxFileSizeMB()));
+            } catch (RejectedExecutionException e) {
+                // Очередь парсинга переполнена, файл не принят
+                log.warn("Parse of a file of user {} rejected: {}", userId, e.getMessage());
+                sendMessage(chatId, Constants.ERROR_PROCESSING_QUEUE_FULL);
             }catch (Exception e) {
                 log.error("Failed to download file for user {}", userId, e);
                 sendMessage(chatId, Constants.ERROR_MSG_UNKNOWN_DOWNLOAD);
@@ -195,33 +256,44 @@ public class XBot implements LongPollingSingleThreadUpdateConsumer, SessionServi
     }
 
     public void sendFileToUser(Long chatId, File fileToSend) throws TelegramApiException {
-        InputFile inputFile = new InputFile(fileToSend, fileToSend.getName());
+        sendFileToUser(chatId, new InputFile(fileToSend, fileToSend.getName()));
+    }
 
+    private void sendFileToUser(Long chatId, InputFile inputFile) throws TelegramApiException {
         SendDocument sendDocument = new SendDocument(chatId.toString(), inputFile);
         sendDocument.setCaption("Файл с результатом");
         telegramClient.execute(sendDocument);
     }
 
+    @Override
+    public void onFileAdded(Long userId, Long chatId, UploadedFile file) {
+        file.setParseResult(chatParsingService.submit(userId, file));
+    }
+
     @Override
     public boolean onProcessingBegin(Long userId, Long chatId, List<UploadedFile> files) throws Exception {
-        Set<User> participants = new HashSet<>();
-        Set<User> mentions = new HashSet<>();
-        Set<User> channels = new HashSet<>();
         sendMessage(chatId, Constants.PROCESS_BEGIN);
 
+        // Файлы парсятся параллельно по мере загрузки (onFileAdded), здесь остаётся дождаться и объединить
+        List<Path> paths = new ArrayList<>(files.size());
+        List<Future<ExtractionResult>> parses = new ArrayList<>(files.size());
         for (var f : files) {
-            var content = Files.readString(Paths.get(f.getLocalPath()));
-            try {
-                var parse = ParserFactory.getParser(content).parse(content);
-                participants.addAll(parse.participants());
-                mentions.addAll(parse.mentions());
-                channels.addAll(parse.channels());
-            } catch (ParserException e) {
-                log.warn("Parser error file: {}", f.getFileName());
-                sendMessage(chatId, String.format(Constants.ERROR_FILE_PROCESS, f.getFileName()));
-                return false;
-            }
+            Path path = Paths.get(f.getLocalPath());
+            paths.add(path);
+            parses.add(f.getParseResult() != null ? f.getParseResult() : chatParsingService.submit(userId, f));
         }
+        ExtractionResult result;
+        try {
+            result = chatParsingService.collect(paths, parses);
+        } catch (FileParseException e) {
+            String fileName = files.get(paths.indexOf(e.getFile())).getFileName();
+            log.warn("Parser error file: {}", fileName, e.getCause());
+            sendMessage(chatId, String.format(Constants.ERROR_FILE_PROCESS, fileName));
+            return false;
+        }
+        Set<User> participants = result.participants();
+        Set<User> mentions = result.mentions();
+        Set<User> channels = result.channels();
 
         if (participants.isEmpty() && mentions.isEmpty() && channels.isEmpty()) {
             log.warn("Empty users list");
@@ -229,56 +301,53 @@ public class XBot implements LongPollingSingleThreadUpdateConsumer, SessionServi
         }
 
         int totalCount = participants.size() + mentions.size() + channels.size();
-        if (totalCount < Constants.TEXT_OUTPUT_THRESHOLD) {
-            sendMessage(chatId, formatResultAsText(participants, mentions, channels));
+        OutputFormat preferred = outputFormats.get(userId);
+        if (preferred == null && totalCount < Constants.TEXT_OUTPUT_THRESHOLD) {
+            sendTextResult(chatId, textResultRenderer.render(participants, mentions, channels));
         } else {
-            File resultFile = excelGenerator.generateExcel(participants, mentions, channels,
-                    "result", fileUploadService.getTempDirectory());
-            sendFileToUser(chatId, resultFile);
-            Files.deleteIfExists(resultFile.toPath());
+            sendResultFile(chatId, result, resultWriters.choose(totalCount, preferred));
         }
         return true;
     }
 
-    private String formatResultAsText(Set<User> participants, Set<User> mentions, Set<User> channels) {
-        StringBuilder sb = new StringBuilder();
-        int totalCount = participants.size() + mentions.size() + channels.size();
-        sb.append(String.format("👥 Найдено: %d\n", totalCount));
-
-        if (!participants.isEmpty()) {
-            sb.append(String.format("\n📝 Участники (%d):\n", participants.size()));
-            int counter = 1;
-            for (User user : participants) {
-                sb.append(String.format("%d. %s (%s)\n", counter++, user.fullName(), formatUserLink(user)));
-            }
-        }
-
-        if (!mentions.isEmpty()) {
-            sb.append(String.format("\n💬 Упоминания (%d):\n", mentions.size()));
-            int counter = 1;
-            for (User user : mentions) {
-                sb.append(String.format("%d. %s (%s)\n", counter++, user.fullName(), formatUserLink(user)));
-            }
+    /**
+     * Текст уходит частями не длиннее лимита Telegram через очередь с паузами;
+     * ждём последнюю часть, чтобы сообщение о завершении пришло после результата.
+     */
+    private void sendTextResult(Long chatId, List<String> chunks) {
+        CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+        for (String chunk : chunks) {
+            last = pacedMessageSender.enqueue(SendMessage.builder()
+                    .chatId(chatId.toString())
+                    .text(chunk)
+                    .build());
         }
-
-        if (!channels.isEmpty()) {
-            sb.append(String.format("\n📢 Каналы (%d):\n", channels.size()));
-            int counter = 1;
-            for (User user : channels) {
-                sb.append(String.format("%d. %s\n", counter++, user.fullName()));
-            }
+        try {
+            last.join();
+        } catch (CompletionException e) {
+            log.warn("Text result was not delivered to chat {}", chatId, e.getCause());
         }
-
-        return sb.toString();
     }
 
-    private String formatUserLink(User user) {
-        if (user.telegramId() == null) {
-            return "";
+    /**
+     * Результат пишется в память и отправляется оттуда; на диск уходит только то, что больше
+     * RESULT_MEMORY_LIMIT_MB. Временный файл удаляется и при ошибке отправки.
+     */
+    private void sendResultFile(Long chatId, ExtractionResult result, OutputFormat format) throws Exception {
+        String fileName = "telegram_users_" + System.currentTimeMillis() + "." + format.extension();
+        SpillingOutputStream out = new SpillingOutputStream(config.getResultMemoryLimitBytes(),
+                Paths.get(fileUploadService.getTempDirectory()), "." + format.extension());
+        try {
+            try (out) {
+                resultWriters.get(format).write(result, out);
+            }
+            log.debug("Result {} is {} bytes, in memory: {}", fileName, out.size(), out.isInMemory());
+            sendFileToUser(chatId, out.isInMemory()
+                    ? new InputFile(out.toInputStream(), fileName)
+                    : new InputFile(out.getFile(), fileName));
+        } finally {
+            out.delete();
         }
-        return user.telegramId().startsWith("user")
-                ? "tg://user?id=" + user.telegramId().substring(4)
-                : "@" + user.telegramId();
     }
 
     @Override
@@ -290,4 +359,22 @@ public class XBot implements LongPollingSingleThreadUpdateConsumer, SessionServi
     public void onProcessingError(Long chatId) {
         sendMessage(chatId, Constants.ERROR_PROCESS);
     }
+
+    // Вызываются из потока таймеров сессий, поэтому сообщения уходят через очередь, не блокируя его
+    @Override
+    public void onProcessingQueued(Long chatId, int position) {
+        enqueueMessage(chatId, String.format(Constants.PROCESS_QUEUED, position));
+    }
+
+    @Override
+    public void onProcessingRejected(Long chatId) {
+        enqueueMessage(chatId, Constants.ERROR_PROCESSING_QUEUE_FULL);
+    }
+
+    private void enqueueMessage(Long chatId, String text) {
+        pacedMessageSender.enqueue(SendMessage.builder()
+                .chatId(chatId.toString())
+                .text(text)
+                .build());
+    }
 }
@@ -15,6 +15,20 @@ public class AppConfig {
     private final int maxFilesPerUser;
     private final int sessionTimeoutMinutes;
     private final int processingTimeoutMs;
+    private final int parserThreads;
+    private final int maxUnpackedSizeMB;
+    private final int maxArchiveEntries;
+    private final int excelRowWindow;
+    private final int excelAutoSizeMaxRows;
+    private final int csvOutputThreshold;
+    private final int resultMemoryLimitMB;
+    private final int maxConcurrentDownloads;
+    private final int maxDownloadsPerUser;
+    private final int processingWorkers;
+    private final int processingQueueCapacity;
+    private final int processingHeapPercent;
+    private final int parserHeapPercent;
+    private final int parserQueueCapacity;
 
     private static final Logger log = LoggerFactory.getLogger(AppConfig.class);
     private final Dotenv dotenv;
@@ -32,6 +46,20 @@ public class AppConfig {
         this.maxFilesPerUser = getEnvAsInt("MAX_FILES_PER_USER", 10);
         this.sessionTimeoutMinutes = getEnvAsInt("SESSION_TIMEOUT_MINUTES", 30);
         this.processingTimeoutMs = getEnvAsInt("PROCESSING_TIMEOUT_MS", 3000);
+        this.parserThreads = getEnvAsInt("PARSER_THREADS", Runtime.getRuntime().availableProcessors());
+        this.maxUnpackedSizeMB = getEnvAsInt("MAX_UNPACKED_SIZE_MB", 1024);
+        this.maxArchiveEntries = getEnvAsInt("MAX_ARCHIVE_ENTRIES", 10_000);
+        this.excelRowWindow = getEnvAsInt("EXCEL_ROW_WINDOW", 100);
+        this.excelAutoSizeMaxRows = getEnvAsInt("EXCEL_AUTOSIZE_MAX_ROWS", 0);
+        this.csvOutputThreshold = getEnvAsInt("CSV_OUTPUT_THRESHOLD", 50_000);
+        this.resultMemoryLimitMB = getEnvAsInt("RESULT_MEMORY_LIMIT_MB", 16);
+        this.maxConcurrentDownloads = getEnvAsInt("MAX_CONCURRENT_DOWNLOADS", 32);
+        this.maxDownloadsPerUser = getEnvAsInt("MAX_DOWNLOADS_PER_USER", 3);
+        this.processingWorkers = getEnvAsInt("PROCESSING_WORKERS", 0);
+        this.processingQueueCapacity = getEnvAsInt("PROCESSING_QUEUE_CAPACITY", 20);
+        this.processingHeapPercent = getEnvAsInt("PROCESSING_HEAP_PERCENT", 20);
+        this.parserHeapPercent = getEnvAsInt("PARSER_HEAP_PERCENT", 40);
+        this.parserQueueCapacity = getEnvAsInt("PARSER_QUEUE_CAPACITY", 200);
 
         if (botUsername == null || botUsername.isBlank()) {
             throw new IllegalStateException("Configuration error: BOT_USERNAME environment variable is not set");
@@ -72,6 +100,20 @@ public class AppConfig {
     public int getSessionTimeoutMinutes() { return sessionTimeoutMinutes; }
     public int getMaxFilesPerUser() { return maxFilesPerUser; }
     public int getProcessingTimeoutMs() { return processingTimeoutMs; }
+    public int getParserThreads() { return parserThreads; }
+    public long getMaxUnpackedSizeBytes() { return (long) maxUnpackedSizeMB * 1024 * 1024; }
+    public int getMaxArchiveEntries() { return maxArchiveEntries; }
+    public int getExcelRowWindow() { return excelRowWindow; }
+    public int getExcelAutoSizeMaxRows() { return excelAutoSizeMaxRows; }
+    public int getCsvOutputThreshold() { return csvOutputThreshold; }
+    public int getResultMemoryLimitBytes() { return resultMemoryLimitMB * 1024 * 1024; }
+    public int getMaxConcurrentDownloads() { return maxConcurrentDownloads; }
+    public int getMaxDownloadsPerUser() { return maxDownloadsPerUser; }
+    public int getProcessingWorkers() { return processingWorkers; }
+    public int getProcessingQueueCapacity() { return processingQueueCapacity; }
+    public int getProcessingHeapPercent() { return processingHeapPercent; }
+    public int getParserHeapPercent() { return parserHeapPercent; }
+    public int getParserQueueCapacity() { return parserQueueCapacity; }
 
     private int getEnvAsInt(String name, int defaultValue) {
         String value = getEnv(name);
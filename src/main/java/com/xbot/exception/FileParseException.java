@@ -0,0 +1,21 @@
+package com.xbot.exception;
+
+import com.xbot.parser.ParserException;
+
+import java.nio.file.Path;
+
+/**
+ * Parsing of one file of a multi-file job failed.
+ */
+public class FileParseException extends ParserException {
+    private final Path file;
+
+    public FileParseException(Path file, Throwable cause) {
+        super("Failed to parse file: " + file.getFileName(), cause);
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
@@ -1,11 +1,15 @@
 package com.xbot.model;
 
+import java.util.List;
 import java.util.Set;
 
 /**
  * Unified result of extracting users from chat history.
  * Used by both JsonChatParser and HtmlChatParser.
  * Contains chat metadata and extracted user collections.
+ * <p>
+ * Parsers fill a {@link UserIndex}; the user sets are then read-only views of it
+ * that create User objects only when iterated, and {@link #users()} returns the index.
  */
 public record ExtractionResult(
         // Chat metadata
@@ -18,6 +22,13 @@ public record ExtractionResult(
         Set<User> mentions,
         Set<User> channels
 ) {
+    /**
+     * Result backed by a user index.
+     */
+    public ExtractionResult(String chatName, String chatType, Long chatId, UserIndex users) {
+        this(chatName, chatType, chatId, users.participants(), users.mentions(), users.channels());
+    }
+
     /**
      * Convenience constructor without chat metadata.
      */
@@ -31,4 +42,44 @@ public record ExtractionResult(
     public ExtractionResult(String chatName, Set<User> participants, Set<User> mentions, Set<User> channels) {
         this(chatName, null, null, participants, mentions, channels);
     }
+
+    /**
+     * Merges results in list order, so the first occurrence of a user wins.
+     * Chat metadata is taken from the first result that has it.
+     */
+    public static ExtractionResult merge(List<ExtractionResult> results) {
+        String chatName = null;
+        String chatType = null;
+        Long chatId = null;
+        UserIndex merged = new UserIndex();
+
+        for (ExtractionResult result : results) {
+            if (chatName == null) chatName = result.chatName();
+            if (chatType == null) chatType = result.chatType();
+            if (chatId == null) chatId = result.chatId();
+
+            if (result.users() != null) {
+                merged.addAll(result.users());
+            } else {
+                addAll(merged, result.participants(), UserIndex.PARTICIPANT);
+                addAll(merged, result.mentions(), UserIndex.MENTION);
+                addAll(merged, result.channels(), UserIndex.CHANNEL);
+            }
+        }
+        return new ExtractionResult(chatName, chatType, chatId, merged);
+    }
+
+    /**
+     * @return the index the user sets are views of, or null if the result was built from plain sets
+     */
+    public UserIndex users() {
+        UserIndex users = UserIndex.of(participants);
+        return users != null && UserIndex.of(mentions) == users && UserIndex.of(channels) == users ? users : null;
+    }
+
+    private static void addAll(UserIndex index, Set<User> users, int role) {
+        if (users != null) {
+            users.forEach(user -> index.add(user, role));
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package com.xbot.model;
 
 import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents an uploaded file from a user
@@ -13,6 +14,7 @@ public class UploadedFile {
     private final LocalDateTime uploadedAt;
     private String localPath; // Where file is saved temporarily
     private boolean processed;
+    private volatile CompletableFuture<ExtractionResult> parseResult; // Parse started right after download
 
     public UploadedFile(String fileId, String fileName, String mimeType, long fileSize) {
         this.fileId = fileId;
@@ -33,6 +35,18 @@ public class UploadedFile {
     public void setLocalPath(String localPath) { this.localPath = localPath; }
     public boolean isProcessed() { return processed; }
     public void setProcessed(boolean processed) { this.processed = processed; }
+    public CompletableFuture<ExtractionResult> getParseResult() { return parseResult; }
+    public void setParseResult(CompletableFuture<ExtractionResult> parseResult) { this.parseResult = parseResult; }
+
+    /**
+     * Stops the parse started on arrival, if it is still running.
+     */
+    public void cancelParse() {
+        CompletableFuture<ExtractionResult> result = parseResult;
+        if (result != null) {
+            result.cancel(true);
+        }
+    }
 
     public boolean isHtmlFile() {
         return fileName != null &&
@@ -44,7 +58,20 @@ public class UploadedFile {
         return fileName != null && fileName.toLowerCase().endsWith(".json");
     }
 
+    public boolean isZipFile() {
+        return fileName != null && fileName.toLowerCase().endsWith(".zip");
+    }
+
+    /**
+     * Gzip-compressed export: .json.gz, .html.gz or .htm.gz
+     */
+    public boolean isGzipFile() {
+        if (fileName == null) return false;
+        String lower = fileName.toLowerCase();
+        return lower.endsWith(".json.gz") || lower.endsWith(".html.gz") || lower.endsWith(".htm.gz");
+    }
+
     public boolean isSupportedFormat() {
-        return isHtmlFile() || isJsonFile();
+        return isHtmlFile() || isJsonFile() || isZipFile() || isGzipFile();
     }
 }
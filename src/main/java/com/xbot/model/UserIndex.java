@@ -0,0 +1,531 @@
+package com.xbot.model;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Compact deduplicating index of extracted users.
+ * <p>
+ * One entry per distinct telegramId with a role bitmask ({@link #PARTICIPANT},
+ * {@link #MENTION}, {@link #CHANNEL}). Numeric ids ({@code user123456789}) are kept
+ * as {@code long} in an open-addressing table, every other key (usernames, display
+ * names) in a separate string table. Entry fields live in parallel arrays, and
+ * {@link User} objects are created only when a role view is iterated.
+ * <p>
+ * Each role view shows a user as they first occurred in that role, the same as separate
+ * per-role sets would: the mentions list keeps the text a participant was mentioned by.
+ * The entry itself ({@link #user(int)}) carries the attributes of the highest-ranked role
+ * (participant, then channel, then mention); the few roles whose first occurrence differs
+ * from that get a role slot: parallel arrays of attributes chained from the entry, at most two per entry.
+ * <p>
+ * Activity counters (messages sent, first/last message time as unix seconds, times
+ * mentioned) are primitive arrays next to the entries, filled by the parsers in the
+ * same pass; 0 means the time is unknown.
+ * <p>
+ * Not thread-safe: every parse fills its own index, indexes are combined with {@link #addAll}.
+ */
+public final class UserIndex {
+
+    public static final int PARTICIPANT = 1;
+    public static final int MENTION = 2;
+    public static final int CHANNEL = 4;
+
+    private static final String NUMERIC_PREFIX = "user";
+    private static final int MAX_NUMERIC_DIGITS = 18;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Entries, in insertion order
+    private int size;
+    private long[] numericIds = new long[INITIAL_CAPACITY];
+    private String[] keys = new String[INITIAL_CAPACITY];     // null for numeric entries
+    private String[] usernames = new String[INITIAL_CAPACITY];
+    private String[] names = new String[INITIAL_CAPACITY];
+    private String[] fullNames = new String[INITIAL_CAPACITY];
+    private byte[] roles = new byte[INITIAL_CAPACITY];
+    private byte[] ranks = new byte[INITIAL_CAPACITY];        // rank of the role the attributes came from
+    private int[] messageCounts = new int[INITIAL_CAPACITY];
+    private long[] firstMessageTimes = new long[INITIAL_CAPACITY];
+    private long[] lastMessageTimes = new long[INITIAL_CAPACITY];
+    private int[] mentionCounts = new int[INITIAL_CAPACITY];
+    private int[] firstRoleSlots = new int[INITIAL_CAPACITY];  // slot + 1, 0 if the roles share the entry's attributes
+    private final int[] roleCounts = new int[3];
+
+    // Role slots: attributes of the first occurrence in a role, when they differ from the entry's
+    private int roleSlotCount;
+    private byte[] slotRoles = new byte[0];
+    private int[] nextRoleSlots = new int[0];                 // slot + 1 of the entry's next role slot, 0 if none
+    private String[] slotUsernames = new String[0];
+    private String[] slotNames = new String[0];
+    private String[] slotFullNames = new String[0];
+
+    // Hash tables: slot holds entry + 1, 0 is empty
+    private int[] numericSlots = new int[INITIAL_CAPACITY * 2];
+    private int numericCount;
+    private int[] keySlots = new int[INITIAL_CAPACITY * 2];
+    private int keyCount;
+    private int nullKeyEntry = -1;
+
+    /**
+     * Adds a user in the given role, or adds the role to an existing entry.
+     *
+     * @param role one of PARTICIPANT, MENTION, CHANNEL
+     * @return entry number
+     */
+    public int add(String telegramId, String username, String name, String fullName, int role) {
+        long numericId = parseNumericId(telegramId);
+        int entry = numericId >= 0 ? findOrInsertNumeric(numericId) : findOrInsertKey(telegramId);
+        update(entry, username, name, fullName, role);
+        return entry;
+    }
+
+    /**
+     * Adds a user with a numeric id ({@code "user" + numericId}).
+     */
+    public int addNumeric(long numericId, String username, String name, String fullName, int role) {
+        int entry = findOrInsertNumeric(numericId);
+        update(entry, username, name, fullName, role);
+        return entry;
+    }
+
+    public void add(User user, int role) {
+        add(user.telegramId(), user.username(), user.name(), user.fullName(), role);
+    }
+
+    /**
+     * Adds all entries of another index after the entries of this one.
+     */
+    public void addAll(UserIndex other) {
+        for (int i = 0; i < other.size; i++) {
+            int entry = other.keys[i] == null && i != other.nullKeyEntry
+                    ? findOrInsertNumeric(other.numericIds[i])
+                    : findOrInsertKey(other.keys[i]);
+            for (int role = PARTICIPANT; role <= CHANNEL; role <<= 1) {
+                if (other.hasRole(i, role)) {
+                    int slot = other.roleSlot(i, role);
+                    if (slot >= 0) {
+                        update(entry, other.slotUsernames[slot], other.slotNames[slot], other.slotFullNames[slot], role);
+                    } else {
+                        update(entry, other.usernames[i], other.names[i], other.fullNames[i], role);
+                    }
+                }
+            }
+
+            messageCounts[entry] += other.messageCounts[i];
+            mentionCounts[entry] += other.mentionCounts[i];
+            recordTime(entry, other.firstMessageTimes[i]);
+            recordTime(entry, other.lastMessageTimes[i]);
+        }
+    }
+
+    /**
+     * Counts a message sent by the entry's user.
+     *
+     * @param unixTime message time in unix seconds, 0 if unknown
+     */
+    public void recordMessage(int entry, long unixTime) {
+        messageCounts[entry]++;
+        recordTime(entry, unixTime);
+    }
+
+    /**
+     * Counts a mention of the entry's user.
+     */
+    public void recordMention(int entry) {
+        mentionCounts[entry]++;
+    }
+
+    public int messageCount(int entry) {
+        return messageCounts[entry];
+    }
+
+    /**
+     * @return unix seconds, 0 if unknown
+     */
+    public long firstMessageTime(int entry) {
+        return firstMessageTimes[entry];
+    }
+
+    /**
+     * @return unix seconds, 0 if unknown
+     */
+    public long lastMessageTime(int entry) {
+        return lastMessageTimes[entry];
+    }
+
+    public int mentionCount(int entry) {
+        return mentionCounts[entry];
+    }
+
+    private void recordTime(int entry, long unixTime) {
+        if (unixTime == 0) {
+            return;
+        }
+        if (firstMessageTimes[entry] == 0 || unixTime < firstMessageTimes[entry]) {
+            firstMessageTimes[entry] = unixTime;
+        }
+        if (unixTime > lastMessageTimes[entry]) {
+            lastMessageTimes[entry] = unixTime;
+        }
+    }
+
+    /**
+     * Looks a user up by id without allocating, so callers can check before creating Strings.
+     *
+     * @param telegramId a String or a reusable buffer such as StringBuilder
+     * @return entry number, or -1 if the user is not in the index
+     */
+    public int find(CharSequence telegramId) {
+        long numericId = parseNumericId(telegramId);
+        return numericId >= 0 ? findNumeric(numericId) : findKey(telegramId);
+    }
+
+    public int findNumeric(long numericId) {
+        int mask = numericSlots.length - 1;
+        for (int slot = hash(numericId) & mask; numericSlots[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = numericSlots[slot] - 1;
+            if (numericIds[entry] == numericId) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of distinct users.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int count(int role) {
+        return roleCounts[Integer.numberOfTrailingZeros(role)];
+    }
+
+    public boolean hasRole(int entry, int role) {
+        return (roles[entry] & role) != 0;
+    }
+
+    /**
+     * Creates the User of an entry.
+     */
+    public User user(int entry) {
+        return new User(telegramId(entry), usernames[entry], names[entry], fullNames[entry]);
+    }
+
+    /**
+     * Creates the User of an entry as it first occurred in the role.
+     */
+    public User user(int entry, int role) {
+        int slot = roleSlot(entry, role);
+        return slot >= 0
+                ? new User(telegramId(entry), slotUsernames[slot], slotNames[slot], slotFullNames[slot])
+                : user(entry);
+    }
+
+    private String telegramId(int entry) {
+        return keys[entry] != null || entry == nullKeyEntry
+                ? keys[entry]
+                : NUMERIC_PREFIX + numericIds[entry];
+    }
+
+    public Set<User> participants() {
+        return new RoleView(PARTICIPANT);
+    }
+
+    public Set<User> mentions() {
+        return new RoleView(MENTION);
+    }
+
+    public Set<User> channels() {
+        return new RoleView(CHANNEL);
+    }
+
+    /**
+     * @return the index behind a role view, or null if the set is not one
+     */
+    public static UserIndex of(Set<User> users) {
+        return users instanceof RoleView view ? view.index() : null;
+    }
+
+    /**
+     * Parses {@code user<digits>} into the number, rejecting forms that would not print back
+     * the same (leading zeros, too many digits).
+     *
+     * @return the id, or -1 if the key is not numeric
+     */
+    public static long parseNumericId(CharSequence telegramId) {
+        if (telegramId == null) {
+            return -1;
+        }
+        int length = telegramId.length();
+        int digits = length - NUMERIC_PREFIX.length();
+        if (digits < 1 || digits > MAX_NUMERIC_DIGITS) {
+            return -1;
+        }
+        for (int i = 0; i < NUMERIC_PREFIX.length(); i++) {
+            if (telegramId.charAt(i) != NUMERIC_PREFIX.charAt(i)) {
+                return -1;
+            }
+        }
+        if (telegramId.charAt(NUMERIC_PREFIX.length()) == '0' && digits > 1) {
+            return -1;
+        }
+
+        long value = 0;
+        for (int i = NUMERIC_PREFIX.length(); i < length; i++) {
+            char c = telegramId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Adds one role to the entry; the first occurrence in a role wins.
+     */
+    private void update(int entry, String username, String name, String fullName, int role) {
+        if (hasRole(entry, role)) {
+            return;
+        }
+        int rank = rank(role);
+        if (roles[entry] == 0 || rank > ranks[entry]) {
+            // The roles seen so far keep the attributes they were added with
+            for (int other = PARTICIPANT; other <= CHANNEL; other <<= 1) {
+                if (hasRole(entry, other) && roleSlot(entry, other) < 0
+                        && !sameAttributes(entry, username, name, fullName)) {
+                    addRoleSlot(entry, other, usernames[entry], names[entry], fullNames[entry]);
+                }
+            }
+            usernames[entry] = username;
+            names[entry] = name;
+            fullNames[entry] = fullName;
+            ranks[entry] = (byte) rank;
+        } else if (!sameAttributes(entry, username, name, fullName)) {
+            addRoleSlot(entry, role, username, name, fullName);
+        }
+        roles[entry] |= (byte) role;
+        roleCounts[Integer.numberOfTrailingZeros(role)]++;
+    }
+
+    private boolean sameAttributes(int entry, String username, String name, String fullName) {
+        return Objects.equals(usernames[entry], username)
+                && Objects.equals(names[entry], name)
+                && Objects.equals(fullNames[entry], fullName);
+    }
+
+    /**
+     * @return the slot with the entry's attributes in the role, or -1 if the role uses the entry's own
+     */
+    private int roleSlot(int entry, int role) {
+        for (int slot = firstRoleSlots[entry] - 1; slot >= 0; slot = nextRoleSlots[slot] - 1) {
+            if (slotRoles[slot] == role) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void addRoleSlot(int entry, int role, String username, String name, String fullName) {
+        if (roleSlotCount == slotRoles.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, roleSlotCount + (roleSlotCount >> 1));
+            slotRoles = Arrays.copyOf(slotRoles, capacity);
+            nextRoleSlots = Arrays.copyOf(nextRoleSlots, capacity);
+            slotUsernames = Arrays.copyOf(slotUsernames, capacity);
+            slotNames = Arrays.copyOf(slotNames, capacity);
+            slotFullNames = Arrays.copyOf(slotFullNames, capacity);
+        }
+        int slot = roleSlotCount++;
+        slotRoles[slot] = (byte) role;
+        slotUsernames[slot] = username;
+        slotNames[slot] = name;
+        slotFullNames[slot] = fullName;
+        nextRoleSlots[slot] = firstRoleSlots[entry];
+        firstRoleSlots[entry] = slot + 1;
+    }
+
+    private static int rank(int role) {
+        return switch (role) {
+            case PARTICIPANT -> 3;
+            case CHANNEL -> 2;
+            case MENTION -> 1;
+            default -> throw new IllegalArgumentException("Unknown role: " + role);
+        };
+    }
+
+    private int findOrInsertNumeric(long numericId) {
+        int entry = findNumeric(numericId);
+        if (entry >= 0) {
+            return entry;
+        }
+
+        entry = newEntry();
+        numericIds[entry] = numericId;
+        if (++numericCount * 2 > numericSlots.length) {
+            numericSlots = rehash(numericSlots, true);
+        } else {
+            insertSlot(numericSlots, hash(numericId), entry);
+        }
+        return entry;
+    }
+
+    private int findKey(CharSequence key) {
+        if (key == null) {
+            return nullKeyEntry;
+        }
+        int mask = keySlots.length - 1;
+        for (int slot = hash(key) & mask; keySlots[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = keySlots[slot] - 1;
+            if (keys[entry] != null && keys[entry].contentEquals(key)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private int findOrInsertKey(String key) {
+        int entry = findKey(key);
+        if (entry >= 0) {
+            return entry;
+        }
+
+        entry = newEntry();
+        keys[entry] = key;
+        if (key == null) {
+            nullKeyEntry = entry;
+        } else if (++keyCount * 2 > keySlots.length) {
+            keySlots = rehash(keySlots, false);
+        } else {
+            insertSlot(keySlots, hash(key), entry);
+        }
+        return entry;
+    }
+
+    private int newEntry() {
+        if (size == keys.length) {
+            int capacity = size + (size >> 1);
+            numericIds = Arrays.copyOf(numericIds, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            usernames = Arrays.copyOf(usernames, capacity);
+            names = Arrays.copyOf(names, capacity);
+            fullNames = Arrays.copyOf(fullNames, capacity);
+            roles = Arrays.copyOf(roles, capacity);
+            ranks = Arrays.copyOf(ranks, capacity);
+            messageCounts = Arrays.copyOf(messageCounts, capacity);
+            firstMessageTimes = Arrays.copyOf(firstMessageTimes, capacity);
+            lastMessageTimes = Arrays.copyOf(lastMessageTimes, capacity);
+            mentionCounts = Arrays.copyOf(mentionCounts, capacity);
+            firstRoleSlots = Arrays.copyOf(firstRoleSlots, capacity);
+        }
+        return size++;
+    }
+
+    /**
+     * Builds a table twice as large holding every entry of the given kind (the newest included).
+     */
+    private int[] rehash(int[] slots, boolean numeric) {
+        int[] table = new int[slots.length * 2];
+        for (int entry = 0; entry < size; entry++) {
+            boolean isNumeric = keys[entry] == null && entry != nullKeyEntry;
+            if (isNumeric == numeric && (numeric || keys[entry] != null)) {
+                insertSlot(table, numeric ? hash(numericIds[entry]) : hash(keys[entry]), entry);
+            }
+        }
+        return table;
+    }
+
+    private static void insertSlot(int[] table, int hash, int entry) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Same value for a String and for a buffer with the same characters.
+     */
+    private static int hash(CharSequence value) {
+        int h;
+        if (value instanceof String string) {
+            h = string.hashCode();
+        } else {
+            h = 0;
+            for (int i = 0; i < value.length(); i++) {
+                h = 31 * h + value.charAt(i);
+            }
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Read-only set of the users having one role, in insertion order.
+     */
+    private final class RoleView extends AbstractSet<User> {
+        private final int role;
+
+        RoleView(int role) {
+            this.role = role;
+        }
+
+        UserIndex index() {
+            return UserIndex.this;
+        }
+
+        @Override
+        public int size() {
+            return count(role);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof User user)) {
+                return false;
+            }
+            int entry = find(user.telegramId());
+            return entry >= 0 && hasRole(entry, role);
+        }
+
+        @Override
+        public Iterator<User> iterator() {
+            return new Iterator<>() {
+                private int next = advance(0);
+
+                private int advance(int from) {
+                    int entry = from;
+                    while (entry < size && !hasRole(entry, role)) {
+                        entry++;
+                    }
+                    return entry;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public User next() {
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    User user = user(next, role);
+                    next = advance(next + 1);
+                    return user;
+                }
+            };
+        }
+    }
+}
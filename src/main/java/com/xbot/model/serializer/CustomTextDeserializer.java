@@ -4,14 +4,19 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Deserializes message "text", which is either a plain string or an array of
+ * strings and formatted segments ({"type": "bold", "text": "..."}).
+ * <p>
+ * A plain string stays a String. An array becomes a List with the text of every segment; the other fields
+ * of a formatted segment (type, href, user_id) are skipped at the token level without being decoded,
+ * because the same data is exported in "text_entities".
+ */
 public class CustomTextDeserializer extends JsonDeserializer<Object> {
 
     @Override
@@ -21,23 +26,41 @@ public class CustomTextDeserializer extends JsonDeserializer<Object> {
         if (currentToken == JsonToken.VALUE_STRING) {
             return p.getText();
         } else if (currentToken == JsonToken.START_ARRAY) {
-            JsonNode node = p.getCodec().readTree(p);
-            if (node.isArray()) {
-                List<Object> result = new ArrayList<>();
-                for (JsonNode item : node) {
-                    if (item.isTextual()) {
-                        result.add(item.asText());
-                    } else if (item.isObject()) {
-                        // Конвертируем объект в Map
-                        ObjectMapper mapper = (ObjectMapper) p.getCodec();
-                        Map<String, Object> map = mapper.convertValue(item, Map.class);
-                        result.add(map);
+            List<String> result = new ArrayList<>();
+            JsonToken token;
+            while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == JsonToken.VALUE_STRING) {
+                    result.add(p.getText());
+                } else if (token == JsonToken.START_OBJECT) {
+                    String text = readSegmentText(p);
+                    if (text != null) {
+                        result.add(text);
                     }
+                } else {
+                    p.skipChildren();
                 }
-                return result;
             }
+            return result;
         }
 
+        p.skipChildren();
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the "text" field of a segment object, the parser is positioned on its START_OBJECT.
+     */
+    private static String readSegmentText(JsonParser p) throws IOException {
+        String text = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            boolean isText = "text".equals(p.currentName());
+            JsonToken value = p.nextToken();
+            if (isText && value == JsonToken.VALUE_STRING) {
+                text = p.getText();
+            } else {
+                p.skipChildren();
+            }
+        }
+        return text;
+    }
+}
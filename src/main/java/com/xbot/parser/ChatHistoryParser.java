@@ -2,6 +2,12 @@ package com.xbot.parser;
 
 import com.xbot.model.ExtractionResult;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 /**
  * Interface for parsing Telegram chat history exports.
  * Implementations handle specific formats (JSON, HTML).
@@ -17,6 +23,31 @@ public interface ChatHistoryParser {
      */
     ExtractionResult parse(String content) throws ParserException;
 
+    /**
+     * Parses chat history directly from a byte stream (UTF-8).
+     * The stream is not closed by the parser.
+     *
+     * @param in the raw bytes of the chat export file
+     * @return extraction result containing participants, mentions, and channels
+     * @throws ParserException if reading or parsing fails
+     */
+    ExtractionResult parse(InputStream in) throws ParserException;
+
+    /**
+     * Parses chat history from a file without loading it into a String first.
+     *
+     * @param file path to the chat export file
+     * @return extraction result containing participants, mentions, and channels
+     * @throws ParserException if reading or parsing fails
+     */
+    default ExtractionResult parse(Path file) throws ParserException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            return parse(in);
+        } catch (IOException e) {
+            throw new ParserException("Failed to read file: " + file.getFileName(), e);
+        }
+    }
+
     /**
      * Checks if this parser can handle the given content.
      *
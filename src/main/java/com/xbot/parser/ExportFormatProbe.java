@@ -0,0 +1,139 @@
+package com.xbot.parser;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Detects the export format from the first few KB of a file.
+ * <p>
+ * JSON: first non-whitespace char is '{' and the top-level "messages" key holds an array.
+ * HTML: first non-whitespace char is '<', the prefix contains "&lt;html" and a message div.
+ * When the prefix is cut before the decisive part, the first character decides.
+ */
+final class ExportFormatProbe {
+
+    static final int PROBE_SIZE = 8 * 1024;
+
+    enum Format {
+        JSON,
+        HTML,
+        UNKNOWN
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final byte[] HTML_TAG = "<html".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MESSAGE_CLASS = "class=\"message ".getBytes(StandardCharsets.US_ASCII);
+
+    private ExportFormatProbe() {
+    }
+
+    static Format probe(String content) {
+        if (content == null) {
+            return Format.UNKNOWN;
+        }
+        boolean complete = content.length() <= PROBE_SIZE;
+        String prefix = complete ? content : content.substring(0, PROBE_SIZE);
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        return probe(bytes, bytes.length, complete);
+    }
+
+    static Format probe(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return probe(in);
+        }
+    }
+
+    /**
+     * Reads at most {@link #PROBE_SIZE} bytes from the current position of the stream.
+     */
+    static Format probe(InputStream in) throws IOException {
+        // One extra byte tells whether the prefix holds the whole content
+        byte[] buffer = new byte[PROBE_SIZE + 1];
+        int length = in.readNBytes(buffer, 0, buffer.length);
+        boolean complete = length <= PROBE_SIZE;
+        return probe(buffer, Math.min(length, PROBE_SIZE), complete);
+    }
+
+    /**
+     * @param prefix   first bytes of the content (UTF-8)
+     * @param length   number of valid bytes in the prefix
+     * @param complete true if the prefix is the whole content
+     */
+    static Format probe(byte[] prefix, int length, boolean complete) {
+        int start = skipBomAndWhitespace(prefix, length);
+        if (start >= length) {
+            return Format.UNKNOWN;
+        }
+
+        return switch (prefix[start]) {
+            case '{' -> isJsonExport(prefix, start, length, complete) ? Format.JSON : Format.UNKNOWN;
+            case '<' -> isHtmlExport(prefix, start, length, complete) ? Format.HTML : Format.UNKNOWN;
+            default -> Format.UNKNOWN;
+        };
+    }
+
+    private static boolean isJsonExport(byte[] prefix, int start, int length, boolean complete) {
+        try (JsonParser parser = JSON_FACTORY.createParser(prefix, start, length - start)) {
+            parser.nextToken();
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("messages".equals(field)) {
+                    return value == JsonToken.START_ARRAY;
+                }
+                parser.skipChildren();
+            }
+            // End of the top-level object (or of the content) without "messages"
+            return token == null && !complete;
+        } catch (IOException e) {
+            // The prefix ended in the middle of a token: trust the leading '{'
+            return !complete;
+        }
+    }
+
+    private static boolean isHtmlExport(byte[] prefix, int start, int length, boolean complete) {
+        if (indexOfIgnoreCase(prefix, start, length, HTML_TAG) < 0) {
+            return false;
+        }
+        return !complete || indexOfIgnoreCase(prefix, start, length, MESSAGE_CLASS) >= 0;
+    }
+
+    private static int skipBomAndWhitespace(byte[] bytes, int length) {
+        int i = 0;
+        if (length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            i = 3;
+        }
+        while (i < length && (bytes[i] == ' ' || bytes[i] == '\n' || bytes[i] == '\r' || bytes[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * ASCII case-insensitive search; the pattern must be lower case.
+     */
+    private static int indexOfIgnoreCase(byte[] bytes, int from, int length, byte[] pattern) {
+        outer:
+        for (int i = from; i <= length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                byte b = bytes[i + j];
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                if (b != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
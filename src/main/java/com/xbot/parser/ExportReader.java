@@ -0,0 +1,199 @@
+package com.xbot.parser;
+
+import com.xbot.model.ExtractionResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads an uploaded export file: a plain JSON/HTML export, a gzip-compressed one
+ * (.json.gz, .html.gz) or a ZIP of the whole export folder.
+ * <p>
+ * Archives are recognized by their magic bytes and parsed straight from the
+ * decompressing stream, nothing is extracted to disk. In a ZIP only .json/.html
+ * entries are parsed (media and styles are skipped), in archive order, and their
+ * results are merged.
+ * <p>
+ * A small archive can unpack to gigabytes, so the unpacked bytes of all entries (parsed or skipped) and
+ * the number of ZIP entries are capped; past a limit the read fails with {@link ParserException}.
+ */
+public final class ExportReader {
+    private static final Logger log = LoggerFactory.getLogger(ExportReader.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static final long DEFAULT_MAX_UNPACKED_BYTES = 1024L * 1024 * 1024;
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private ExportReader() {
+    }
+
+    public static ExtractionResult read(Path file) throws ParserException {
+        return read(file, DEFAULT_MAX_UNPACKED_BYTES, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxUnpackedBytes limit for the decompressed size of an archive
+     * @param maxEntries       limit for the number of entries in a ZIP
+     */
+    public static ExtractionResult read(Path file, long maxUnpackedBytes, int maxEntries) throws ParserException {
+        String name = file.getFileName().toString();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            return switch (detectArchive(in)) {
+                case ZIP -> readZip(in, name, maxUnpackedBytes, maxEntries);
+                case GZIP -> readGzip(in, name, maxUnpackedBytes);
+                // Plain exports go through Path, so large JSON can use the parallel extractor
+                case NONE -> ParserFactory.getParser(file).parse(file);
+            };
+        } catch (IOException e) {
+            throw new ParserException("Failed to read file: " + name, e);
+        }
+    }
+
+    private enum Archive {
+        ZIP,
+        GZIP,
+        NONE
+    }
+
+    private static Archive detectArchive(InputStream in) throws IOException {
+        in.mark(4);
+        byte[] magic = in.readNBytes(4);
+        in.reset();
+
+        if (magic.length >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+            return Archive.ZIP;
+        }
+        if (magic.length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            return Archive.GZIP;
+        }
+        return Archive.NONE;
+    }
+
+    private static ExtractionResult readGzip(InputStream in, String name, long maxUnpackedBytes) throws IOException {
+        InputStream content = new BufferedInputStream(
+                new UnpackedLimitInputStream(new GZIPInputStream(in, BUFFER_SIZE), maxUnpackedBytes, name), BUFFER_SIZE);
+        return ParserFactory.getParser(content, name).parse(content);
+    }
+
+    private static ExtractionResult readZip(InputStream in, String name, long maxUnpackedBytes, int maxEntries)
+            throws IOException {
+        List<ExtractionResult> results = new ArrayList<>();
+        ZipInputStream zip = new ZipInputStream(in);
+        // Counts the unpacked bytes of all entries together
+        InputStream unpacked = new UnpackedLimitInputStream(zip, maxUnpackedBytes, name);
+
+        ZipEntry entry;
+        int entries = 0;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (++entries > maxEntries) {
+                throw new ParserException("Archive " + name + " has more than " + maxEntries + " entries");
+            }
+            if (entry.isDirectory() || !isExportEntry(entry.getName())) {
+                drain(unpacked);
+                continue;
+            }
+
+            // Parsers don't close the stream, but make sure the archive survives anyway
+            InputStream content = new BufferedInputStream(new NonClosingInputStream(unpacked), BUFFER_SIZE);
+            ChatHistoryParser parser;
+            try {
+                parser = ParserFactory.getParser(content, entry.getName());
+            } catch (ParserException e) {
+                log.debug("Skipping {} in {}: not a chat export", entry.getName(), name);
+                drain(unpacked);
+                continue;
+            }
+            results.add(parser.parse(content));
+            // A parser may stop before the end of the entry, e.g. after the closing tag or brace
+            drain(unpacked);
+        }
+
+        if (results.isEmpty()) {
+            throw new ParserException("No chat export found in archive " + name);
+        }
+        return ExtractionResult.merge(results);
+    }
+
+    /**
+     * Reads the rest of the current entry through the counter: getNextEntry would inflate it uncounted.
+     */
+    private static void drain(InputStream unpacked) throws IOException {
+        unpacked.transferTo(OutputStream.nullOutputStream());
+    }
+
+    private static boolean isExportEntry(String entryName) {
+        String lower = entryName.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".json") || lower.endsWith(".html") || lower.endsWith(".htm");
+    }
+
+    /**
+     * Fails the read once more than {@code limit} bytes came out of the decompressing stream.
+     */
+    private static final class UnpackedLimitInputStream extends FilterInputStream {
+        private final long limit;
+        private final String name;
+        private long count;
+
+        UnpackedLimitInputStream(InputStream in, long limit, String name) {
+            super(in);
+            this.limit = limit;
+            this.name = name;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) {
+            count += n;
+            if (count > limit) {
+                throw new ParserException("Archive " + name + " unpacks to more than " + limit + " bytes");
+            }
+        }
+    }
+
+    private static final class NonClosingInputStream extends FilterInputStream {
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
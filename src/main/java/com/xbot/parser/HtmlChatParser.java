@@ -1,20 +1,36 @@
 package com.xbot.parser;
 
 import com.xbot.model.ExtractionResult;
-import com.xbot.model.User;
+import com.xbot.model.UserIndex;
 import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
+import org.jsoup.internal.StringUtil;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Parser for Telegram HTML chat exports.
+ * <p>
+ * The export is streamed through {@link HtmlMessageSplitter}, so only one message
+ * is held as a DOM at a time instead of the whole messages.html.
  */
 public class HtmlChatParser implements ChatHistoryParser {
 
+    private static final String USER_LINK_PREFIX = "tg://user?id=";
+    private static final String HTTPS_T_ME = "https://t.me/";
+    private static final String HTTP_T_ME = "http://t.me/";
+    private static final IgnoreCaseMatcher DELETED_ACCOUNT_EN = new IgnoreCaseMatcher("deleted account");
+    private static final IgnoreCaseMatcher DELETED_ACCOUNT_RU = new IgnoreCaseMatcher("удалённый аккаунт");
+
     @Override
     public ExtractionResult parse(String content) throws ParserException {
 
@@ -23,117 +39,357 @@ public class HtmlChatParser implements ChatHistoryParser {
         }
 
         try {
-            Document doc = Jsoup.parse(content);
+            return extract(new HtmlMessageSplitter(new StringReader(content)));
+        } catch (Exception e) {
+            throw new ParserException("Failed to parse HTML", e);
+        }
+    }
 
-            Set<User> participants = new HashSet<>();
-            Set<User> mentions = new HashSet<>();
-            Set<User> channels = new HashSet<>();
+    @Override
+    public ExtractionResult parse(InputStream in) throws ParserException {
+        try {
+            HtmlMessageSplitter splitter = new HtmlMessageSplitter(new InputStreamReader(in, StandardCharsets.UTF_8));
+            ExtractionResult result = extract(splitter);
+            if (!splitter.sawContent()) {
+                throw new ParserException("Empty HTML content");
+            }
+            return result;
+        } catch (Exception e) {
+            throw new ParserException("Failed to parse HTML", e);
+        }
+    }
 
-            Elements messages = doc.select("div.message");
+    @Override
+    public boolean canParse(String content) {
+        return ExportFormatProbe.probe(content) == ExportFormatProbe.Format.HTML;
+    }
 
-            for (Element msg : messages) {
+    @Override
+    public String getFormatName() {
+        return "HTML";
+    }
 
-                if (msg.hasClass("service")) {
-                    continue;
-                }
+    /**
+     * Parses messages one at a time: each message div is turned into a small DOM,
+     * processed and dropped before the next one is read.
+     */
+    private ExtractionResult extract(HtmlMessageSplitter splitter) throws IOException {
+        UserIndex users = new UserIndex();
+        MessageScan scan = new MessageScan();
 
-                Element from = msg.selectFirst("div.from_name");
-                if (from == null) {
-                    continue;
-                }
+        String markup;
+        while ((markup = splitter.next()) != null) {
+            Element msg = Jsoup.parseBodyFragment(markup).body().firstElementChild();
+            if (msg != null) {
+                processMessage(msg, scan, users);
+            }
+        }
 
-                String displayName = extractDisplayName(from);
-                if (displayName.isEmpty()) {
-                    continue;
-                }
+        return new ExtractionResult(null, null, null, users);
+    }
 
-                if (isDeletedAccount(displayName)) {
-                    continue;
-                }
+    /**
+     * Scratch state of a single parse, reused for every message.
+     */
+    static final class MessageScan {
+        private Element from;
+        private Element date;
+        private final List<Element> textBlocks = new ArrayList<>();
+        private final StringBuilder rawText = new StringBuilder(64);
+        private final StringBuilder normalizedText = new StringBuilder(64);
+        // Sender of the previous message, for "joined" messages that omit from_name
+        private int lastSender = -1;
 
-                User user = new User(displayName);
-                participants.add(user);
+        private void reset() {
+            from = null;
+            date = null;
+            textBlocks.clear();
+        }
+    }
 
-                // Extract mentions from <a> tags (real Telegram mentions)
-                extractMentionsFromLinks(msg, mentions);
-            }
+    /**
+     * Extracts the sender and link mentions of one message element.
+     * The subtree is walked once, without CSS selectors and without cloning.
+     */
+    void processMessage(Element msg, MessageScan scan, UserIndex users) {
+        if (msg.hasClass("service")) {
+            scan.lastSender = -1;
+            return;
+        }
 
-            return new ExtractionResult(participants, mentions, channels);
+        scan.reset();
+        collectBlocks(msg, scan);
+        int sender = scan.from != null ? addSender(scan, users) : joinedSender(msg, scan);
+        scan.lastSender = sender;
+        if (sender < 0) {
+            return;
+        }
 
-        } catch (Exception e) {
-            throw new ParserException("Failed to parse HTML", e);
+        users.recordMessage(sender, scan.date != null ? parseDateTitle(scan.date.attr("title")) : 0);
+
+        // Extract mentions from <a> tags (real Telegram mentions), joined messages included:
+        // the JSON export lists every message with its sender, so both formats count the same mentions
+        for (Element block : scan.textBlocks) {
+            extractMentionsFromLinks(block, users);
         }
     }
 
-    @Override
-    public boolean canParse(String content) {
-        if (content == null) {
-            return false;
+    /**
+     * @return entry of the sender, or -1 if the message is skipped (no name, deleted account)
+     */
+    private int addSender(MessageScan scan, UserIndex users) {
+        CharSequence displayName = extractDisplayName(scan.from, scan);
+        if (displayName.isEmpty()) {
+            return -1;
+        }
+
+        if (isDeletedAccount(displayName)) {
+            return -1;
+        }
+
+        // Check before allocating: a known sender costs no objects
+        int entry = users.find(displayName);
+        if (entry < 0 || !users.hasRole(entry, UserIndex.PARTICIPANT)) {
+            String name = displayName.toString();
+            entry = users.add(name, null, name, name, UserIndex.PARTICIPANT);
         }
-        String lower = content.toLowerCase();
-        return lower.contains("<html") && lower.contains("class=\"message ");
+        return entry;
     }
 
-    @Override
-    public String getFormatName() {
-        return "HTML";
+    /**
+     * Consecutive messages of one sender are exported as "joined" and have no from_name.
+     */
+    private static int joinedSender(Element msg, MessageScan scan) {
+        return msg.hasClass("joined") ? scan.lastSender : -1;
+    }
+
+    /**
+     * Finds the first div.from_name, the first div.date and all div.text blocks in document order.
+     */
+    private static void collectBlocks(Element element, MessageScan scan) {
+        for (int i = 0; i < element.childNodeSize(); i++) {
+            if (!(element.childNode(i) instanceof Element child)) {
+                continue;
+            }
+            if ("div".equals(child.normalName())) {
+                if (scan.from == null && child.hasClass("from_name")) {
+                    scan.from = child;
+                    continue;
+                }
+                if (child.hasClass("text")) {
+                    scan.textBlocks.add(child);
+                    continue;
+                }
+                if (scan.date == null && child.hasClass("date")) {
+                    scan.date = child;
+                    continue;
+                }
+            }
+            collectBlocks(child, scan);
+        }
     }
 
-    private boolean isDeletedAccount(String displayName) {
-        String lower = displayName.toLowerCase();
-        return lower.contains("deleted account") || lower.contains("удалённый аккаунт");
+    private boolean isDeletedAccount(CharSequence displayName) {
+        return DELETED_ACCOUNT_EN.isFoundIn(displayName) || DELETED_ACCOUNT_RU.isFoundIn(displayName);
     }
 
     /**
      * Extracts display name from from_name element, excluding date span.
      * Forwarded messages have: Name <span class="date details">timestamp</span>
+     *
+     * @return the name in a scratch buffer, valid until the next message
+     */
+    private CharSequence extractDisplayName(Element fromElement, MessageScan scan) {
+        scan.rawText.setLength(0);
+        appendTextSkippingDate(fromElement, scan.rawText);
+        return normalizeWhitespace(scan.rawText, scan.normalizedText);
+    }
+
+    private static void appendTextSkippingDate(Element element, StringBuilder accum) {
+        for (int i = 0; i < element.childNodeSize(); i++) {
+            Node node = element.childNode(i);
+            if (node instanceof TextNode textNode) {
+                accum.append(textNode.getWholeText());
+            } else if (node instanceof Element child) {
+                // Date span that appears in forwarded messages
+                if ("span".equals(child.normalName()) && child.hasClass("date")) {
+                    continue;
+                }
+                if ("br".equals(child.normalName())) {
+                    accum.append(' ');
+                }
+                appendTextSkippingDate(child, accum);
+            }
+        }
+    }
+
+    /**
+     * Collapses whitespace runs to a single space and trims, like {@link Element#text()}.
      */
-    private String extractDisplayName(Element fromElement) {
-        // Clone to avoid modifying original DOM
-        Element clone = fromElement.clone();
-        // Remove date span that appears in forwarded messages
-        clone.select("span.date").remove();
-        return clone.text().trim();
+    private static CharSequence normalizeWhitespace(CharSequence raw, StringBuilder out) {
+        out.setLength(0);
+        boolean pendingSpace = false;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (StringUtil.isActuallyWhitespace(c)) {
+                pendingSpace = out.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    out.append(' ');
+                    pendingSpace = false;
+                }
+                out.append(c);
+            }
+        }
+        return out;
     }
 
     /**
-     * Extracts mentions from <a> tags in the message.
+     * Extracts mentions from <a> tags in a div.text block.
      * Telegram HTML exports mark mentions as:
      * - <a href="https://t.me/username">@username</a> for @mentions
      * - <a href="tg://user?id=12345">Display Name</a> for text mentions
      */
-    private void extractMentionsFromLinks(Element msg, Set<User> mentions) {
-        Elements links = msg.select("div.text a[href]");
-
-        for (Element link : links) {
-            String href = link.attr("href");
-            String text = link.text().trim();
-
-            if (href.startsWith("tg://user?id=")) {
-                // Text mention with user ID: tg://user?id=12345
-                String idString = href.replace("tg://user?id=", "");
-                // Validate it's numeric
-                if (!idString.isEmpty() && idString.chars().allMatch(Character::isDigit)) {
-                    String telegramId = "user" + idString;
-                    mentions.add(new User(telegramId, null, text, text));
+    private void extractMentionsFromLinks(Element block, UserIndex users) {
+        for (int i = 0; i < block.childNodeSize(); i++) {
+            if (!(block.childNode(i) instanceof Element child)) {
+                continue;
+            }
+            if ("a".equals(child.normalName()) && child.hasAttr("href")) {
+                addMention(child, users);
+            }
+            extractMentionsFromLinks(child, users);
+        }
+    }
+
+    private void addMention(Element link, UserIndex users) {
+        String href = link.attr("href");
+
+        if (href.startsWith(USER_LINK_PREFIX)) {
+            // Text mention with user ID: tg://user?id=12345
+            String idString = href.substring(USER_LINK_PREFIX.length());
+            // Validate it's numeric
+            if (!idString.isEmpty() && isDigits(idString)) {
+                String text = link.text().trim();
+                String telegramId = "user" + idString;
+                users.recordMention(users.add(telegramId, null, text, text, UserIndex.MENTION));
+            }
+        } else if (href.startsWith(HTTPS_T_ME) || href.startsWith(HTTP_T_ME)) {
+            // @username mention: https://t.me/username
+            String username = href.substring(href.startsWith(HTTPS_T_ME) ? HTTPS_T_ME.length() : HTTP_T_ME.length());
+            if (!username.isEmpty() && username.indexOf('/') < 0) {
+                String text = link.text().trim();
+                // Clean up display text
+                String displayName;
+                if (text.startsWith("@")) {
+                    displayName = text.substring(1);
+                } else if (text.startsWith(HTTPS_T_ME) || text.startsWith(HTTP_T_ME)) {
+                    // Link text is URL itself, use username as display name
+                    displayName = username;
+                } else {
+                    displayName = text;
                 }
-            } else if (href.startsWith("https://t.me/") || href.startsWith("http://t.me/")) {
-                // @username mention: https://t.me/username
-                String username = href.replaceFirst("https?://t\\.me/", "");
-                if (!username.isEmpty() && !username.contains("/")) {
-                    // Clean up display text
-                    String displayName;
-                    if (text.startsWith("@")) {
-                        displayName = text.substring(1);
-                    } else if (text.startsWith("https://t.me/") || text.startsWith("http://t.me/")) {
-                        // Link text is URL itself, use username as display name
-                        displayName = username;
-                    } else {
-                        displayName = text;
+                users.recordMention(users.add(username, username, displayName, displayName, UserIndex.MENTION));
+            }
+        }
+    }
+
+    /**
+     * Parses the title of a message date div, "dd.MM.yyyy HH:mm:ss UTC+03:00", into unix seconds
+     * with plain arithmetic (no java.time objects per message).
+     *
+     * @return unix seconds, 0 if the title has another format
+     */
+    static long parseDateTitle(String title) {
+        if (title.length() < 19 || title.charAt(2) != '.' || title.charAt(5) != '.' || title.charAt(10) != ' '
+                || title.charAt(13) != ':' || title.charAt(16) != ':') {
+            return 0;
+        }
+        int day = parseDigits(title, 0, 2);
+        int month = parseDigits(title, 3, 2);
+        int year = parseDigits(title, 6, 4);
+        int hour = parseDigits(title, 11, 2);
+        int minute = parseDigits(title, 14, 2);
+        int second = parseDigits(title, 17, 2);
+        if (day < 1 || month < 1 || month > 12 || year < 0 || hour < 0 || minute < 0 || second < 0) {
+            return 0;
+        }
+
+        long offsetSeconds = 0;
+        int utc = title.indexOf("UTC", 19);
+        if (utc >= 0 && title.length() >= utc + 9) {
+            char sign = title.charAt(utc + 3);
+            int offsetHours = parseDigits(title, utc + 4, 2);
+            int offsetMinutes = parseDigits(title, utc + 7, 2);
+            if ((sign == '+' || sign == '-') && offsetHours >= 0 && offsetMinutes >= 0) {
+                offsetSeconds = (offsetHours * 3600L + offsetMinutes * 60L) * (sign == '-' ? -1 : 1);
+            }
+        }
+
+        return daysFromCivil(year, month, day) * 86400L + hour * 3600L + minute * 60L + second - offsetSeconds;
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * @return the number, or -1 if a character is not a digit
+     */
+    private static int parseDigits(String value, int start, int length) {
+        int result = 0;
+        for (int i = start; i < start + length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Case-insensitive substring matcher with the case variants of the needle computed once.
+     */
+    private static final class IgnoreCaseMatcher {
+        private final char[] lower;
+        private final char[] upper;
+
+        IgnoreCaseMatcher(String needle) {
+            this.lower = needle.toLowerCase(Locale.ROOT).toCharArray();
+            this.upper = needle.toUpperCase(Locale.ROOT).toCharArray();
+        }
+
+        boolean isFoundIn(CharSequence text) {
+            int last = text.length() - lower.length;
+            outer:
+            for (int i = 0; i <= last; i++) {
+                for (int j = 0; j < lower.length; j++) {
+                    char c = text.charAt(i + j);
+                    if (c != lower[j] && c != upper[j]) {
+                        continue outer;
                     }
-                    mentions.add(new User(username, username, displayName, displayName));
                 }
+                return true;
             }
+            return false;
         }
     }
 }
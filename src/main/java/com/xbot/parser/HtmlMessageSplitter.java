@@ -0,0 +1,308 @@
+package com.xbot.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Cuts a Telegram HTML export into single message elements without building a DOM.
+ * <p>
+ * The reader is scanned tag by tag; when a {@code div} with the "message" class opens,
+ * its markup is captured until the matching {@code </div>} and returned by {@link #next()}.
+ * Everything outside message elements is discarded, so memory is bounded by the
+ * largest single message. Tag names and classes are compared in place in the tag buffer,
+ * so tags outside messages cost no allocation.
+ */
+final class HtmlMessageSplitter {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private final StringBuilder tag = new StringBuilder(128);
+    private final StringBuilder message = new StringBuilder(4 * 1024);
+    private boolean sawContent;
+
+    HtmlMessageSplitter(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Returns true if anything but whitespace has been read so far.
+     */
+    boolean sawContent() {
+        return sawContent;
+    }
+
+    /**
+     * Returns the markup of the next message div, or null at the end of input.
+     */
+    String next() throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            if (c != '<') {
+                if (!Character.isWhitespace(c)) {
+                    sawContent = true;
+                }
+                continue;
+            }
+            sawContent = true;
+
+            readTag();
+            if (isTag("div") && !isClosingTag() && hasMessageClass()) {
+                return captureMessage();
+            }
+            String rawText = rawTextElement();
+            if (rawText != null && !isClosingTag()) {
+                skipRawText(rawText, null);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Captures the message element whose opening tag is in {@link #tag}.
+     */
+    private String captureMessage() throws IOException {
+        message.setLength(0);
+        message.append(tag);
+        int depth = 1;
+
+        int c;
+        while ((c = read()) != -1) {
+            if (c != '<') {
+                message.append((char) c);
+                continue;
+            }
+
+            readTag();
+            message.append(tag);
+
+            String rawText;
+            if (isTag("div")) {
+                if (!isSelfClosingTag()) {
+                    depth += isClosingTag() ? -1 : 1;
+                    if (depth == 0) {
+                        return message.toString();
+                    }
+                }
+            } else if ((rawText = rawTextElement()) != null && !isClosingTag()) {
+                skipRawText(rawText, message);
+            }
+        }
+        // Unterminated message at the end of input: return what we have
+        return message.toString();
+    }
+
+    /**
+     * Reads a tag after '<' into {@link #tag}, including the angle brackets.
+     * Comments and declarations are read whole.
+     */
+    private void readTag() throws IOException {
+        tag.setLength(0);
+        tag.append('<');
+
+        int c = read();
+        if (c == -1) {
+            return;
+        }
+        tag.append((char) c);
+
+        if (c == '!' && peekComment()) {
+            // <!-- ... -->
+            int dashes = 0;
+            while ((c = read()) != -1) {
+                tag.append((char) c);
+                if (c == '>' && dashes >= 2 && tag.length() > 6) {
+                    return;
+                }
+                dashes = c == '-' ? dashes + 1 : 0;
+            }
+            return;
+        }
+
+        char quote = 0;
+        while (c != '>' || quote != 0) {
+            c = read();
+            if (c == -1) {
+                return;
+            }
+            tag.append((char) c);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = (char) c;
+            }
+        }
+    }
+
+    private boolean peekComment() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            int c = read();
+            if (c == -1) {
+                return false;
+            }
+            tag.append((char) c);
+            if (c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skips script/style content up to its closing tag, optionally copying it.
+     */
+    private void skipRawText(String name, StringBuilder copy) throws IOException {
+        String closing = "</" + name;
+        int matched = 0;
+        int c;
+        while ((c = read()) != -1) {
+            if (copy != null) {
+                copy.append((char) c);
+            }
+            if (Character.toLowerCase(c) == closing.charAt(matched)) {
+                matched++;
+                if (matched == closing.length()) {
+                    // Consume the rest of the closing tag
+                    while (c != '>' && (c = read()) != -1) {
+                        if (copy != null) {
+                            copy.append((char) c);
+                        }
+                    }
+                    return;
+                }
+            } else {
+                matched = c == '<' ? 1 : 0;
+            }
+        }
+    }
+
+    /**
+     * Checks the name of the current tag, ignoring case.
+     *
+     * @param name lowercase tag name
+     */
+    private boolean isTag(String name) {
+        int start = isClosingTag() ? 2 : 1;
+        int end = start + name.length();
+        if (!regionMatches(start, name)) {
+            return false;
+        }
+        if (end == tag.length()) {
+            return true;
+        }
+        char c = tag.charAt(end);
+        return Character.isWhitespace(c) || c == '>' || c == '/';
+    }
+
+    private boolean isClosingTag() {
+        return tag.length() > 1 && tag.charAt(1) == '/';
+    }
+
+    private boolean isSelfClosingTag() {
+        return tag.length() > 2 && tag.charAt(tag.length() - 2) == '/';
+    }
+
+    /**
+     * @return the name of the current tag if it is script or style, otherwise null
+     */
+    private String rawTextElement() {
+        return isTag("script") ? "script" : isTag("style") ? "style" : null;
+    }
+
+    /**
+     * Checks whether the class attribute of the current tag contains the "message" token.
+     */
+    private boolean hasMessageClass() {
+        int attr = indexOf("class=");
+        if (attr < 0) {
+            return false;
+        }
+        int start = attr + "class=".length();
+        if (start >= tag.length()) {
+            return false;
+        }
+        char quote = tag.charAt(start);
+        int end;
+        if (quote == '"' || quote == '\'') {
+            start++;
+            end = start;
+            while (end < tag.length() && tag.charAt(end) != quote) {
+                end++;
+            }
+        } else {
+            end = start;
+            while (end < tag.length() && !Character.isWhitespace(tag.charAt(end)) && tag.charAt(end) != '>') {
+                end++;
+            }
+        }
+
+        // Class tokens are separated by whitespace
+        int token = start;
+        while (token < end) {
+            if (Character.isWhitespace(tag.charAt(token))) {
+                token++;
+                continue;
+            }
+            int tokenEnd = token;
+            while (tokenEnd < end && !Character.isWhitespace(tag.charAt(tokenEnd))) {
+                tokenEnd++;
+            }
+            if (tokenEnd - token == "message".length() && regionMatches(token, "message")) {
+                return true;
+            }
+            token = tokenEnd;
+        }
+        return false;
+    }
+
+    /**
+     * Finds text in the current tag, ignoring case.
+     *
+     * @param text lowercase text
+     * @return its position, or -1
+     */
+    private int indexOf(String text) {
+        for (int i = 0; i + text.length() <= tag.length(); i++) {
+            if (regionMatches(i, text)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Same as {@code String.regionMatches(true, offset, text, 0, text.length())} on the tag buffer,
+     * which a StringBuilder does not have.
+     *
+     * @param text lowercase text
+     */
+    private boolean regionMatches(int offset, String text) {
+        if (offset + text.length() > tag.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.toLowerCase(tag.charAt(offset + i)) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+}
@@ -1,28 +1,67 @@
 package com.xbot.parser;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.xbot.model.ChatExport;
-import com.xbot.model.ChatMessage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.xbot.model.ExtractionResult;
 import com.xbot.model.TextEntity;
-import com.xbot.model.User;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.xbot.model.UserIndex;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 /**
  * Parser for Telegram JSON chat exports.
+ * <p>
+ * Walks the export token by token instead of binding it to {@link com.xbot.model.ChatExport}:
+ * each message is read by a {@link MessageProjectionReader} ({@code from}, {@code from_id},
+ * {@code date_unixtime}, {@code text_entities}, {@code action}, {@code actor}), every other subtree is skipped,
+ * so memory does not grow with the number of messages. Senders are looked up in the
+ * {@link UserIndex} by their characters, objects are created only for new senders.
+ * <p>
+ * Files of {@link #PARALLEL_THRESHOLD_BYTES} and more are split into chunks of messages
+ * that are parsed in parallel, see {@link ParallelJsonExtractor}. The chunks of all files run on the parser's
+ * own pool of one thread per core, not on the common pool.
  */
 public class JsonChatParser implements ChatHistoryParser {
 
-    private final ObjectMapper mapper;
+    public static final long PARALLEL_THRESHOLD_BYTES = 8L * 1024 * 1024;
+    public static final int CHUNK_BYTES = 2 * 1024 * 1024;
+
+    private static final ForkJoinPool CHUNK_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("json-chunk-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+
+    private final JsonFactory jsonFactory;
+    private final ForkJoinPool pool;
+    private final long parallelThresholdBytes;
+    private final int chunkBytes;
 
     public JsonChatParser() {
-        mapper = new ObjectMapper();
-        mapper.registerModule(new JavaTimeModule());
+        this(CHUNK_POOL, PARALLEL_THRESHOLD_BYTES, CHUNK_BYTES);
+    }
+
+    /**
+     * Chunks of {@link #CHUNK_BYTES} a parallel parse holds at once; 0 if files are parsed sequentially.
+     */
+    public static int chunksInFlight() {
+        return CHUNK_POOL.getParallelism() > 1 ? CHUNK_POOL.getParallelism() : 0;
+    }
+
+    JsonChatParser(ForkJoinPool pool, long parallelThresholdBytes, int chunkBytes) {
+        this.jsonFactory = new JsonFactory();
+        // Callers own the streams they pass in
+        this.jsonFactory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        this.pool = pool;
+        this.parallelThresholdBytes = parallelThresholdBytes;
+        this.chunkBytes = chunkBytes;
     }
 
     @Override
@@ -32,72 +71,170 @@ public class JsonChatParser implements ChatHistoryParser {
                 throw new ParserException("Empty JSON content");
             }
 
-            // Десериализуем JSON в ChatExport
-            ChatExport chatExport = mapper.readValue(content, ChatExport.class);
-
-            List<ChatMessage> messages = chatExport.messages() != null ? chatExport.messages() : List.of();
-
-            Set<User> participants = new HashSet<>();
-            Set<User> mentions = new HashSet<>();
-            Set<User> channels = new HashSet<>();
-
-            for (ChatMessage msg : messages) {
-                if (msg.from() != null) {
-                    String telegramId = msg.fromId() != null ? msg.fromId() : msg.from();
-                    participants.add(new User(
-                            telegramId,
-                            null,
-                            msg.from(),
-                            msg.from()
-                    ));
-                }
-
-                // Extract mentions from text_entities
-                if (msg.textEntities() != null) {
-                    for (TextEntity entity : msg.textEntities()) {
-                        if (entity.isMention()) {
-                            String effectiveUserId = entity.getEffectiveUserId();
-                            String text = entity.text();
-                            String displayName = text != null && text.startsWith("@")
-                                    ? text.substring(1)
-                                    : text;
-
-                            if (effectiveUserId != null) {
-                                mentions.add(new User(effectiveUserId, null, displayName, displayName));
-                            } else if ("mention".equals(entity.type()) && text != null && text.startsWith("@")) {
-                                String username = text.substring(1);
-                                mentions.add(new User(username, username, username, username));
-                            }
-                        }
-                    }
-                }
-
-                if (msg.action() != null && msg.action().contains("channel")) {
-                    channels.add(new User(msg.actor() != null ? msg.actor() : "unknown"));
-                }
+            try (JsonParser parser = jsonFactory.createParser(content)) {
+                return extract(parser);
             }
 
-            return new ExtractionResult(participants, mentions, channels);
-
         } catch (Exception e) {
             throw new ParserException("Failed to parse JSON", e);
         }
     }
 
     @Override
-    public boolean canParse(String content) {
-        if (content == null || content.isBlank()) return false;
+    public ExtractionResult parse(InputStream in) throws ParserException {
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            return extract(parser);
+        } catch (Exception e) {
+            throw new ParserException("Failed to parse JSON", e);
+        }
+    }
 
+    /**
+     * Parses large files in parallel chunks, small ones sequentially.
+     * Both paths return the same result.
+     */
+    @Override
+    public ExtractionResult parse(Path file) throws ParserException {
+        long size;
         try {
-            JsonNode root = new ObjectMapper().readTree(content);
-            return root.isObject() && root.has("messages") && root.get("messages").isArray();
-        } catch (Exception e) {
-            return false;
+            size = Files.size(file);
+        } catch (IOException e) {
+            throw new ParserException("Failed to read file: " + file.getFileName(), e);
         }
+
+        if (size >= parallelThresholdBytes && size <= Integer.MAX_VALUE && pool.getParallelism() > 1) {
+            try {
+                ExtractionResult result = new ParallelJsonExtractor(this, pool, chunkBytes).extract(file);
+                if (result != null) {
+                    return result;
+                }
+            } catch (Exception e) {
+                throw new ParserException("Failed to parse JSON", e);
+            }
+        }
+        return ChatHistoryParser.super.parse(file);
+    }
+
+    @Override
+    public boolean canParse(String content) {
+        return ExportFormatProbe.probe(content) == ExportFormatProbe.Format.JSON;
     }
 
     @Override
     public String getFormatName() {
         return "JSON";
     }
-}
\ No newline at end of file
+
+    JsonFactory getJsonFactory() {
+        return jsonFactory;
+    }
+
+    /**
+     * Reads the top-level export object: chat metadata and the "messages" array.
+     */
+    private ExtractionResult extract(JsonParser parser) throws IOException {
+        JsonToken first = parser.nextToken();
+        if (first == null) {
+            throw new ParserException("Empty JSON content");
+        }
+        if (first != JsonToken.START_OBJECT) {
+            throw new ParserException("JSON export must be an object");
+        }
+
+        ChatInfo chatInfo = new ChatInfo();
+        UserIndex users = new UserIndex();
+
+        while (readTopLevelFields(parser, chatInfo)) {
+            readMessages(parser, users);
+        }
+
+        return new ExtractionResult(chatInfo.name, chatInfo.type, chatInfo.id, users);
+    }
+
+    /**
+     * Chat metadata from the top-level fields of the export.
+     */
+    static final class ChatInfo {
+        String name;
+        String type;
+        Long id;
+    }
+
+    /**
+     * Reads top-level fields into chatInfo until the "messages" array starts.
+     *
+     * @return true if the parser is positioned on the START_ARRAY of "messages",
+     * false if the end of the top-level object is reached
+     */
+    static boolean readTopLevelFields(JsonParser parser, ChatInfo chatInfo) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            switch (field) {
+                case "name" -> chatInfo.name = MessageProjectionReader.readString(parser);
+                case "type" -> chatInfo.type = MessageProjectionReader.readString(parser);
+                case "id" -> {
+                    if (value == JsonToken.VALUE_NUMBER_INT) {
+                        chatInfo.id = parser.getLongValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                case "messages" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        return true;
+                    }
+                    parser.skipChildren();
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extracts users from messages, the parser is positioned on the START_ARRAY of "messages".
+     */
+    void readMessages(JsonParser parser, UserIndex users) throws IOException {
+        MessageProjectionReader reader = new MessageProjectionReader(parser);
+
+        while (reader.advance()) {
+            CharSequence from = reader.from();
+            if (from != null) {
+                CharSequence telegramId = reader.fromId() != null ? reader.fromId() : from;
+                // Check before allocating: a known sender costs no objects
+                int entry = users.find(telegramId);
+                if (entry < 0 || !users.hasRole(entry, UserIndex.PARTICIPANT)) {
+                    String name = from.toString();
+                    String id = reader.fromId() != null ? telegramId.toString() : name;
+                    entry = users.add(id, null, name, name, UserIndex.PARTICIPANT);
+                }
+                users.recordMessage(entry, reader.dateUnixtime());
+            }
+
+            // Extract mentions from text_entities
+            for (TextEntity entity : reader.textEntities()) {
+                if (entity.isMention()) {
+                    String effectiveUserId = entity.getEffectiveUserId();
+                    String text = entity.text();
+                    String displayName = text != null && text.startsWith("@")
+                            ? text.substring(1)
+                            : text;
+
+                    if (effectiveUserId != null) {
+                        users.recordMention(users.add(effectiveUserId, null, displayName, displayName, UserIndex.MENTION));
+                    } else if ("mention".equals(entity.type()) && text != null && text.startsWith("@")) {
+                        String username = text.substring(1);
+                        users.recordMention(users.add(username, username, username, username, UserIndex.MENTION));
+                    }
+                }
+            }
+
+            if (reader.isChannelAction()) {
+                String actor = reader.actor() != null ? reader.actor() : "unknown";
+                users.add(actor, null, actor, actor, UserIndex.CHANNEL);
+            }
+        }
+    }
+}
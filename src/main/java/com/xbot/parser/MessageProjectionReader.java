@@ -0,0 +1,236 @@
+package com.xbot.parser;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.xbot.model.TextEntity;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads messages one by one from a "messages" array, keeping only the fields needed for user extraction:
+ * {@code from}, {@code from_id}, {@code date_unixtime}, {@code action}, {@code actor} and mention entities.
+ * <p>
+ * Works on the token stream directly: unused fields are skipped without being decoded,
+ * and only entities that can be mentions ("mention", "text_link") are kept.
+ * <p>
+ * {@link #advance()} reads the next message into reusable buffers: {@code from} and
+ * {@code from_id} are copied from the parser's character buffer, no String or
+ * projection object is created, so a caller can look the sender up first and
+ * allocate only for new senders.
+ */
+final class MessageProjectionReader {
+
+    private final JsonParser parser;
+
+    // Current message, valid until the next advance()
+    private final StringBuilder from = new StringBuilder(32);
+    private final StringBuilder fromId = new StringBuilder(24);
+    private boolean hasFrom;
+    private boolean hasFromId;
+    private long dateUnixtime;
+    private String action;
+    private String actor;
+    private List<TextEntity> textEntities = List.of();
+
+    /**
+     * @param parser parser positioned on the START_ARRAY token of the messages array
+     */
+    MessageProjectionReader(JsonParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Moves to the next message.
+     *
+     * @return false when the end of the array is reached
+     */
+    boolean advance() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new ParserException("Unexpected end of messages array");
+            }
+            if (token == JsonToken.START_OBJECT) {
+                readMessage();
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * Sender name of the current message, or null. Valid until the next advance().
+     */
+    CharSequence from() {
+        return hasFrom ? from : null;
+    }
+
+    /**
+     * Sender id of the current message ("user123", "channel456"), or null. Valid until the next advance().
+     */
+    CharSequence fromId() {
+        return hasFromId ? fromId : null;
+    }
+
+    /**
+     * Message time in unix seconds, 0 if absent.
+     */
+    long dateUnixtime() {
+        return dateUnixtime;
+    }
+
+    String actor() {
+        return actor;
+    }
+
+    List<TextEntity> textEntities() {
+        return textEntities;
+    }
+
+    boolean isChannelAction() {
+        return action != null && action.contains("channel");
+    }
+
+    private void readMessage() throws IOException {
+        hasFrom = false;
+        hasFromId = false;
+        dateUnixtime = 0;
+        action = null;
+        actor = null;
+        textEntities = List.of();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            switch (field) {
+                case "from" -> hasFrom = readText(from);
+                case "from_id" -> hasFromId = readText(fromId);
+                case "date_unixtime" -> dateUnixtime = readUnixTime();
+                case "action" -> action = readString(parser);
+                case "actor" -> actor = readString(parser);
+                case "text_entities" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        textEntities = readTextEntities();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Copies the current scalar value into the buffer, like {@link #readString} but without a String.
+     *
+     * @return false for null, objects and arrays
+     */
+    private boolean readText(StringBuilder target) throws IOException {
+        target.setLength(0);
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            target.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            return true;
+        }
+        String value = readString(parser);
+        if (value == null) {
+            return false;
+        }
+        target.append(value);
+        return true;
+    }
+
+    /**
+     * Reads "date_unixtime", exported as a string of digits, without creating the String.
+     *
+     * @return unix seconds, 0 if the value is missing or malformed
+     */
+    private long readUnixTime() throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        if (token != JsonToken.VALUE_STRING) {
+            parser.skipChildren();
+            return 0;
+        }
+
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        if (length == 0 || length > 18) {
+            return 0;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private List<TextEntity> readTextEntities() throws IOException {
+        List<TextEntity> entities = null;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new ParserException("Unexpected end of text_entities array");
+            }
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+
+            String type = null;
+            String text = null;
+            Long userId = null;
+            String href = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                switch (field) {
+                    case "type" -> type = readString(parser);
+                    case "text" -> text = readString(parser);
+                    case "href" -> href = readString(parser);
+                    case "user_id" -> userId = value == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : skipValue(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+
+            // Only "mention" and "text_link" entities can be mentions, don't keep the rest
+            if ("mention".equals(type) || "text_link".equals(type)) {
+                if (entities == null) {
+                    entities = new ArrayList<>(2);
+                }
+                entities.add(new TextEntity(type, text, userId, href));
+            }
+        }
+        return entities != null ? entities : List.of();
+    }
+
+    /**
+     * Returns the current scalar value as a string, skipping objects and arrays.
+     */
+    static String readString(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getValueAsString();
+    }
+
+    static Long skipValue(JsonParser parser) throws IOException {
+        parser.skipChildren();
+        return null;
+    }
+}
@@ -0,0 +1,208 @@
+package com.xbot.parser;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.xbot.model.ExtractionResult;
+import com.xbot.model.UserIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Extracts users from a large JSON export in parallel.
+ * <p>
+ * The "messages" array is scanned byte by byte for top-level element boundaries (tracking strings and
+ * nesting only, no tokenizing) through a small read buffer. Every ~chunkBytes of messages are copied out
+ * and handed to the pool as soon as they are found, and each chunk is parsed into its own UserIndex.
+ * At most one chunk per pool thread is in flight: before another one is submitted the oldest is merged,
+ * so the chunk indexes are merged in file order (the first occurrence of a user wins exactly as in a
+ * sequential parse) and the heap of a parse does not grow with the number of chunks.
+ * <p>
+ * The file is read with positional reads and closed when the parse ends; nothing stays mapped.
+ */
+class ParallelJsonExtractor {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] ARRAY_START = "[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ARRAY_END = "]".getBytes(StandardCharsets.US_ASCII);
+    // Makes the bytes after the messages array a valid object: {"":0, "field": ...}
+    private static final byte[] TRAILER_START = "{\"\":0".getBytes(StandardCharsets.US_ASCII);
+
+    private final JsonChatParser messageParser;
+    private final ForkJoinPool pool;
+    private final int chunkBytes;
+
+    ParallelJsonExtractor(JsonChatParser messageParser, ForkJoinPool pool, int chunkBytes) {
+        this.messageParser = messageParser;
+        this.pool = pool;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * @return the extraction result, or null if the file has no top-level "messages" array
+     * and should be parsed sequentially
+     */
+    ExtractionResult extract(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            JsonChatParser.ChatInfo chatInfo = new JsonChatParser.ChatInfo();
+            long arrayStart;
+            // The parser's factory does not close the stream, so the channel stays open
+            try (JsonParser parser = messageParser.getJsonFactory().createParser(Channels.newInputStream(channel))) {
+                if (parser.nextToken() != JsonToken.START_OBJECT || !JsonChatParser.readTopLevelFields(parser, chatInfo)) {
+                    return null;
+                }
+                arrayStart = parser.currentTokenLocation().getByteOffset();
+            }
+
+            UserIndex users = new UserIndex();
+            Deque<ForkJoinTask<UserIndex>> inFlight = new ArrayDeque<>();
+            try {
+                long arrayEnd = scanMessages(channel, arrayStart, users, inFlight);
+                while (!inFlight.isEmpty()) {
+                    users.addAll(inFlight.poll().join());
+                }
+
+                readTrailer(channel, arrayEnd + 1, chatInfo, users);
+                return new ExtractionResult(chatInfo.name, chatInfo.type, chatInfo.id, users);
+            } finally {
+                inFlight.forEach(chunk -> chunk.cancel(true));
+            }
+        }
+    }
+
+    /**
+     * Scans the messages array starting at '[' and submits chunks of whole elements.
+     *
+     * @return position of the closing ']'
+     */
+    private long scanMessages(FileChannel channel, long arrayStart, UserIndex users,
+                              Deque<ForkJoinTask<UserIndex>> inFlight) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        buffer.limit(0);
+        long bufferStart = arrayStart + 1;
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        long chunkStart = -1;
+
+        for (long pos = arrayStart + 1; ; pos++) {
+            if (pos - bufferStart >= buffer.limit()) {
+                bufferStart = pos;
+                buffer.clear();
+                if (channel.read(buffer, pos) < 0) {
+                    throw new ParserException("Unexpected end of messages array");
+                }
+                buffer.flip();
+            }
+            byte b = buffer.get((int) (pos - bufferStart));
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+
+            switch (b) {
+                case ' ', '\n', '\r', '\t' -> {
+                }
+                case ',' -> {
+                    if (depth == 0 && chunkStart >= 0 && pos - chunkStart >= chunkBytes) {
+                        submitChunk(channel, chunkStart, pos, users, inFlight);
+                        chunkStart = -1;
+                    }
+                }
+                case ']', '}' -> {
+                    if (depth == 0) {
+                        if (b == '}') {
+                            throw new ParserException("Unexpected '}' in messages array at byte " + pos);
+                        }
+                        if (chunkStart >= 0) {
+                            submitChunk(channel, chunkStart, pos, users, inFlight);
+                        }
+                        return pos;
+                    }
+                    depth--;
+                }
+                default -> {
+                    if (depth == 0 && chunkStart < 0) {
+                        chunkStart = pos;
+                    }
+                    if (b == '"') {
+                        inString = true;
+                    } else if (b == '{' || b == '[') {
+                        depth++;
+                    }
+                }
+            }
+        }
+    }
+
+    private void submitChunk(FileChannel channel, long start, long end, UserIndex users,
+                             Deque<ForkJoinTask<UserIndex>> inFlight) throws IOException {
+        byte[] chunk = new byte[(int) (end - start)];
+        readFully(channel, chunk, start);
+        if (inFlight.size() >= pool.getParallelism()) {
+            users.addAll(inFlight.poll().join());
+        }
+        inFlight.add(pool.submit(() -> parseChunk(chunk)));
+    }
+
+    private UserIndex parseChunk(byte[] chunk) throws IOException {
+        UserIndex users = new UserIndex();
+
+        InputStream in = concat(new ByteArrayInputStream(ARRAY_START), new ByteArrayInputStream(chunk),
+                new ByteArrayInputStream(ARRAY_END));
+        try (JsonParser parser = messageParser.getJsonFactory().createParser(in)) {
+            parser.nextToken();
+            messageParser.readMessages(parser, users);
+        }
+        return users;
+    }
+
+    /**
+     * Reads top-level fields that follow the messages array (and a repeated "messages" key, if any).
+     */
+    private void readTrailer(FileChannel channel, long start, JsonChatParser.ChatInfo chatInfo, UserIndex users)
+            throws IOException {
+        InputStream in = concat(new ByteArrayInputStream(TRAILER_START), Channels.newInputStream(channel.position(start)));
+        try (JsonParser parser = messageParser.getJsonFactory().createParser(in)) {
+            parser.nextToken();
+            while (JsonChatParser.readTopLevelFields(parser, chatInfo)) {
+                messageParser.readMessages(parser, users);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(bytes);
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new EOFException("File ended inside the messages array");
+            }
+        }
+    }
+
+    private static InputStream concat(InputStream... parts) {
+        return new SequenceInputStream(Collections.enumeration(List.of(parts)));
+    }
+}
@@ -1,10 +1,14 @@
 package com.xbot.parser;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  * Factory for selecting appropriate parser based on content format.
+ * The format is detected from a bounded prefix, so selection cost doesn't depend on file size.
  * TODO: Implement by Alexey
  */
 public class ParserFactory {
@@ -19,10 +23,51 @@ public class ParserFactory {
             throw new ParserException("Content is empty");
         }
 
+        return getParser(ExportFormatProbe.probe(content), "this content");
+    }
+
+    /**
+     * Selects a parser for a file on disk by sniffing its first few KB, without reading the whole file.
+     */
+    public static ChatHistoryParser getParser(Path file) throws ParserException {
+        if (file == null) {
+            throw new ParserException("File is not specified");
+        }
+
+        try {
+            return getParser(ExportFormatProbe.probe(file), file.getFileName().toString());
+        } catch (IOException e) {
+            throw new ParserException("Failed to read file: " + file.getFileName(), e);
+        }
+    }
+
+    /**
+     * Selects a parser for a stream by sniffing its first few KB.
+     * The stream must support mark/reset; it is reset to where it was, so the parser sees the whole content.
+     */
+    public static ChatHistoryParser getParser(InputStream in, String source) throws ParserException {
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("Stream must support mark/reset");
+        }
+
+        try {
+            in.mark(ExportFormatProbe.PROBE_SIZE + 1);
+            ExportFormatProbe.Format format = ExportFormatProbe.probe(in);
+            in.reset();
+            return getParser(format, source);
+        } catch (IOException e) {
+            throw new ParserException("Failed to read " + source, e);
+        }
+    }
+
+    private static ChatHistoryParser getParser(ExportFormatProbe.Format format, String source) {
+        if (format == ExportFormatProbe.Format.UNKNOWN) {
+            throw new ParserException("No parser found for " + source);
+        }
         return PARSERS.stream()
-                .filter(parser -> parser.canParse(content))
+                .filter(parser -> parser.getFormatName().equals(format.name()))
                 .findFirst()
-                .orElseThrow(() -> new ParserException("No parser found for this content"));
+                .orElseThrow(() -> new ParserException("No parser found for format " + format));
     }
 
     public static List<ChatHistoryParser> getAllParsers() {
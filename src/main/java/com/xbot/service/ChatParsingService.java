@@ -0,0 +1,172 @@
+package com.xbot.service;
+
+import com.xbot.exception.FileParseException;
+import com.xbot.model.ExtractionResult;
+import com.xbot.model.UploadedFile;
+import com.xbot.parser.ExportReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Parses the files of one job (messages.html, messages2.html, ...) concurrently.
+ * <p>
+ * All jobs share one {@link ProcessingScheduler}: parses run on a fixed number of threads and, since parsing
+ * is where the memory goes, each one reserves its {@link HeapEstimator#estimateParse heap need} until it
+ * completes; a parse that does not fit the heap budget waits. Waiting parses are ordered fairly between the
+ * users who uploaded them, so ten large files of one user do not hold back another user's single file.
+ * Every file yields its own ExtractionResult and
+ * the results are merged in file order, so the first occurrence of a user wins
+ * exactly as in a sequential parse. Archives are read by {@link ExportReader}.
+ * <p>
+ * Files can be submitted one by one as they arrive and collected later, so by the
+ * time a job is processed most of the parsing is usually done. At most {@code queueCapacity} parses wait;
+ * further files are rejected like report jobs when their queue is full.
+ */
+public class ChatParsingService {
+    private static final Logger log = LoggerFactory.getLogger(ChatParsingService.class);
+
+    public static final int DEFAULT_HEAP_PERCENT = 40;
+    /** Room for the files of all waiting report jobs at the default of 10 files per user. */
+    public static final int DEFAULT_QUEUE_CAPACITY = ProcessingScheduler.DEFAULT_QUEUE_CAPACITY * 10;
+
+    private final ProcessingScheduler scheduler;
+    private final Function<Path, ExtractionResult> reader;
+
+    public ChatParsingService(int threads) {
+        this(threads, ExportReader.DEFAULT_MAX_UNPACKED_BYTES, ExportReader.DEFAULT_MAX_ENTRIES,
+                DEFAULT_QUEUE_CAPACITY, ProcessingScheduler.heapBudget(DEFAULT_HEAP_PERCENT));
+    }
+
+    /**
+     * @param maxUnpackedBytes limit for the decompressed size of one uploaded archive
+     * @param maxArchiveEntries limit for the number of entries in one uploaded ZIP
+     * @param queueCapacity number of parses allowed to wait
+     * @param heapBudget bytes of heap all running parses may need together
+     */
+    public ChatParsingService(int threads, long maxUnpackedBytes, int maxArchiveEntries,
+                              int queueCapacity, long heapBudget) {
+        this(new ProcessingScheduler(Math.max(1, threads), queueCapacity, heapBudget, "chat-parser"),
+                file -> ExportReader.read(file, maxUnpackedBytes, maxArchiveEntries));
+    }
+
+    ChatParsingService(ProcessingScheduler scheduler, Function<Path, ExtractionResult> reader) {
+        this.scheduler = scheduler;
+        this.reader = reader;
+    }
+
+    /**
+     * Starts parsing a file the user uploaded, e.g. as soon as it has been downloaded, once its heap need
+     * fits and the user's turn has come.
+     *
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public CompletableFuture<ExtractionResult> submit(Long userId, UploadedFile file) {
+        return submit(userId, Path.of(file.getLocalPath()), HeapEstimator.estimateParse(file));
+    }
+
+    /**
+     * Starts parsing a file on disk; its heap need is estimated from its name and size.
+     */
+    public CompletableFuture<ExtractionResult> submit(Path file) {
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            // The reader reports the missing file
+            size = 0;
+        }
+        return submit(null, file,
+                HeapEstimator.estimateParse(new UploadedFile(null, file.getFileName().toString(), null, size)));
+    }
+
+    CompletableFuture<ExtractionResult> submit(Long userId, Path file, long heapBytes) {
+        Parse parse = new Parse(file);
+        // The reservation ends when the task returns; a cancelled task returns at once
+        scheduler.submit(userId, parse.task, heapBytes);
+        return parse;
+    }
+
+    /**
+     * A parse as a CompletableFuture, so a report job can be started once its parses are done.
+     * Cancelling it interrupts the running parse, as cancelling the underlying FutureTask does.
+     */
+    private final class Parse extends CompletableFuture<ExtractionResult> {
+        private final FutureTask<ExtractionResult> task;
+
+        Parse(Path file) {
+            task = new FutureTask<>(() -> reader.apply(file)) {
+                @Override
+                protected void done() {
+                    try {
+                        Parse.this.complete(get());
+                    } catch (ExecutionException e) {
+                        Parse.this.completeExceptionally(e.getCause());
+                    } catch (CancellationException | InterruptedException e) {
+                        Parse.this.cancel(false);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            task.cancel(mayInterruptIfRunning);
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    /**
+     * Parses all files and merges the results.
+     *
+     * @throws FileParseException for the first file (in list order) that failed
+     */
+    public ExtractionResult parseAll(List<Path> files) throws InterruptedException {
+        List<Future<ExtractionResult>> futures = new ArrayList<>(files.size());
+        for (Path file : files) {
+            futures.add(submit(file));
+        }
+        return collect(files, futures);
+    }
+
+    /**
+     * Waits for the parses of the files (already running or finished) and merges the results.
+     *
+     * @param futures parse of files.get(i) at index i
+     * @throws FileParseException for the first file (in list order) that failed
+     */
+    public ExtractionResult collect(List<Path> files, List<? extends Future<ExtractionResult>> futures)
+            throws InterruptedException {
+        try {
+            List<ExtractionResult> results = new ArrayList<>(files.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException | CancellationException e) {
+                    throw new FileParseException(files.get(i), e instanceof ExecutionException ? e.getCause() : e);
+                }
+            }
+            log.debug("Parsed {} files", files.size());
+            return ExtractionResult.merge(results);
+        } finally {
+            // No-op for finished tasks; stops the rest after a failure or interrupt
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+}
@@ -2,8 +2,6 @@ package com.xbot.service;
 
 import com.xbot.model.User;
 import com.xbot.model.ExtractionResult;
-import com.xbot.parser.ChatHistoryParser;
-import com.xbot.parser.ParserFactory;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -15,9 +13,14 @@ import java.util.*;
 public class ChatProcessingService {
 
     private final ExcelGenerator excelGenerator;
+    private final ChatParsingService chatParsingService;
 
-    public ChatProcessingService() {
+    /**
+     * @param chatParsingService общий сервис парсинга (его пул потоков закрывает владелец, например XBot)
+     */
+    public ChatProcessingService(ChatParsingService chatParsingService) {
         this.excelGenerator = new ExcelGenerator();
+        this.chatParsingService = chatParsingService;
     }
 
     /**
@@ -30,29 +33,21 @@ public class ChatProcessingService {
      */
     public String process(List<Path> chatFiles, String chatName, String tempDirectory) throws Exception {
 
-        Set<User> allParticipants = new HashSet<>();
-        Set<User> allMentions = new HashSet<>();
-        Set<User> allChannels = new HashSet<>();
-
+        List<Path> existingFiles = new ArrayList<>();
         for (Path file : chatFiles) {
             if (!Files.exists(file)) {
                 System.err.println("Файл не найден: " + file);
                 continue;
             }
+            existingFiles.add(file);
+        }
 
-            String content = Files.readString(file);
-
-            // Выбираем нужный парсер
-            ChatHistoryParser parser = ParserFactory.getParser(content);
-
-            // Получаем ExtractionResult
-            ExtractionResult result = parser.parse(content);
+        // Файлы парсятся параллельно, парсер выбирается по содержимому, файл читается потоком
+        ExtractionResult result = chatParsingService.parseAll(existingFiles);
 
-            // Добавляем участников, mentions и channels
-            if (result.participants() != null) allParticipants.addAll(result.participants());
-            if (result.mentions() != null) allMentions.addAll(result.mentions());
-            if (result.channels() != null) allChannels.addAll(result.channels());
-        }
+        Set<User> allParticipants = new HashSet<>(result.participants());
+        Set<User> allMentions = result.mentions();
+        Set<User> allChannels = result.channels();
 
         // Объединяем все в одну коллекцию для Excel
         allParticipants.addAll(allMentions);
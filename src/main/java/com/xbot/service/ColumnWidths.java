@@ -0,0 +1,112 @@
+package com.xbot.service;
+
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Tracks the widest value of each column while rows are written and sets the widths at the end,
+ * instead of {@link Sheet#autoSizeColumn}, which measures every cell with AWT font metrics.
+ * <p>
+ * Width is estimated in characters of the default font: ASCII counts as 1, Cyrillic letters are
+ * slightly wider, East Asian wide characters and emoji count as 2, combining marks and emoji
+ * joiners/selectors count as 0.
+ */
+final class ColumnWidths {
+
+    /** Excel limit for a column width, in characters. */
+    static final int MAX_CHARS = 255;
+    /** Cell padding added to the widest value, in characters. */
+    private static final float PADDING = 1.5f;
+    /** Bold header text is about this much wider than regular text. */
+    private static final float BOLD_FACTOR = 1.1f;
+
+    private final float[] widths;
+
+    ColumnWidths(int columns) {
+        this.widths = new float[columns];
+    }
+
+    void trackHeader(int column, String header) {
+        trackChars(column, displayWidth(header) * BOLD_FACTOR);
+    }
+
+    void track(int column, CharSequence value) {
+        if (value != null) {
+            trackChars(column, displayWidth(value));
+        }
+    }
+
+    void trackNumber(int column, long number) {
+        trackChars(column, digits(number));
+    }
+
+    void trackChars(int column, float chars) {
+        if (chars > widths[column]) {
+            widths[column] = chars;
+        }
+    }
+
+    int columns() {
+        return widths.length;
+    }
+
+    float width(int column) {
+        return widths[column];
+    }
+
+    void apply(Sheet sheet) {
+        for (int i = 0; i < widths.length; i++) {
+            float chars = Math.min(MAX_CHARS, widths[i] + PADDING);
+            sheet.setColumnWidth(i, Math.round(chars * 256));
+        }
+    }
+
+    static float displayWidth(CharSequence text) {
+        float width = 0;
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            int cp = Character.codePointAt(text, i);
+            i += Character.charCount(cp);
+            width += charWidth(cp);
+        }
+        return width;
+    }
+
+    private static float charWidth(int cp) {
+        if (cp < 0x80) {
+            return cp < 0x20 ? 0f : 1f;
+        }
+        if (cp == 0x200D || (cp >= 0xFE00 && cp <= 0xFE0F)) {
+            return 0f; // zero width joiner, variation selectors
+        }
+        if (cp >= 0x0400 && cp <= 0x04FF) {
+            return 1.15f;
+        }
+        if (cp >= 0x10000 || isWide(cp)) {
+            return 2f; // emoji and other supplementary symbols, CJK
+        }
+        int type = Character.getType(cp);
+        if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK || type == Character.FORMAT) {
+            return 0f;
+        }
+        return 1.1f;
+    }
+
+    private static boolean isWide(int cp) {
+        return (cp >= 0x1100 && cp <= 0x115F)
+                || (cp >= 0x2600 && cp <= 0x27BF)
+                || (cp >= 0x2E80 && cp <= 0xA4CF)
+                || (cp >= 0xAC00 && cp <= 0xD7A3)
+                || (cp >= 0xF900 && cp <= 0xFAFF)
+                || (cp >= 0xFE30 && cp <= 0xFE4F)
+                || (cp >= 0xFF00 && cp <= 0xFF60)
+                || (cp >= 0xFFE0 && cp <= 0xFFE6);
+    }
+
+    private static int digits(long number) {
+        int digits = number < 0 ? 2 : 1;
+        for (long n = Math.abs(number); n >= 10; n /= 10) {
+            digits++;
+        }
+        return digits;
+    }
+}
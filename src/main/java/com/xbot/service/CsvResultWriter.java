@@ -0,0 +1,180 @@
+package com.xbot.service;
+
+import com.xbot.model.ExtractionResult;
+import com.xbot.model.User;
+import com.xbot.model.UserIndex;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the result as one CSV (RFC 4180) or TSV table, optionally gzip-compressed.
+ * <p>
+ * Rows go straight to the output stream in one pass, nothing is kept per user. Columns are the Excel ones
+ * with a leading "Раздел" column instead of separate sheets. The file starts with a UTF-8 BOM so that
+ * Excel opens Cyrillic names correctly.
+ * <p>
+ * Names come from the chat, so a text cell that Excel would read as a formula (starting with {@code =},
+ * {@code +}, {@code -}, {@code @}, a tab or a carriage return) gets a leading {@code '} and stays text.
+ */
+public class CsvResultWriter implements ResultWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char BOM = '\uFEFF';
+
+    private final char delimiter;
+    private final boolean gzip;
+
+    /**
+     * @param delimiter {@code ','} for CSV, {@code '\t'} for TSV
+     * @param gzip      compress the output
+     */
+    public CsvResultWriter(char delimiter, boolean gzip) {
+        this.delimiter = delimiter;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public void write(ExtractionResult result, OutputStream out) throws IOException {
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(compressed != null ? compressed : out,
+                StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        UserIndex activity = result.users();
+        String[] headers = activity != null ? ExcelGenerator.HEADERS_WITH_ACTIVITY : ExcelGenerator.HEADERS;
+        writer.write(BOM);
+        writeField(writer, "Раздел");
+        for (String header : headers) {
+            writer.write(delimiter);
+            writeField(writer, header);
+        }
+        writer.write("\r\n");
+
+        String exportDate = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        writeSection(writer, "Участники", result.participants(), activity, exportDate);
+        writeSection(writer, "Упоминания", result.mentions(), activity, exportDate);
+        writeSection(writer, "Каналы", result.channels(), activity, exportDate);
+
+        writer.flush();
+        if (compressed != null) {
+            compressed.finish();
+        }
+        out.flush();
+    }
+
+    private void writeSection(Writer writer, String section, Set<User> users, UserIndex activity,
+                              String exportDate) throws IOException {
+        int counter = 1;
+        for (User user : users) {
+            writeField(writer, section);
+            writer.write(delimiter);
+            writer.write(Integer.toString(counter++));
+            writer.write(delimiter);
+            writeField(writer, user.telegramId());
+            writer.write(delimiter);
+            writeField(writer, user.fullName());
+            writer.write(delimiter);
+            writeField(writer, ExcelGenerator.formatProfileLink(user));
+            writer.write(delimiter);
+            writer.write(exportDate);
+            if (activity != null) {
+                writeActivity(writer, activity, activity.find(user.telegramId()));
+            }
+            writer.write("\r\n");
+        }
+    }
+
+    private void writeActivity(Writer writer, UserIndex activity, int entry) throws IOException {
+        if (entry < 0) {
+            for (int i = 0; i < 4; i++) {
+                writer.write(delimiter);
+            }
+            return;
+        }
+        writer.write(delimiter);
+        writer.write(Integer.toString(activity.messageCount(entry)));
+        writer.write(delimiter);
+        writeTime(writer, activity.firstMessageTime(entry));
+        writer.write(delimiter);
+        writeTime(writer, activity.lastMessageTime(entry));
+        writer.write(delimiter);
+        writer.write(Integer.toString(activity.mentionCount(entry)));
+    }
+
+    /**
+     * "yyyy-MM-dd HH:mm:ss" in UTC, empty for an unknown time.
+     */
+    private static void writeTime(Writer writer, long unixTime) throws IOException {
+        if (unixTime == 0) {
+            return;
+        }
+        LocalDateTime time = LocalDateTime.ofEpochSecond(unixTime, 0, ZoneOffset.UTC);
+        writer.write(Integer.toString(time.getYear()));
+        writeTwoDigits(writer, '-', time.getMonthValue());
+        writeTwoDigits(writer, '-', time.getDayOfMonth());
+        writeTwoDigits(writer, ' ', time.getHour());
+        writeTwoDigits(writer, ':', time.getMinute());
+        writeTwoDigits(writer, ':', time.getSecond());
+    }
+
+    private static void writeTwoDigits(Writer writer, char separator, int value) throws IOException {
+        writer.write(separator);
+        writer.write('0' + value / 10);
+        writer.write('0' + value % 10);
+    }
+
+    /**
+     * CSV: quoted when it contains the delimiter, a quote or a line break, quotes doubled.
+     * TSV has no quoting, so tabs and line breaks are replaced with spaces.
+     */
+    private void writeField(Writer writer, String field) throws IOException {
+        if (field == null || field.isEmpty()) {
+            return;
+        }
+        String value = startsLikeFormula(field) ? "'" + field : field;
+        if (delimiter == '\t') {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                writer.write(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+            }
+            return;
+        }
+        if (!needsQuotes(value)) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    static boolean startsLikeFormula(String value) {
+        char first = value.charAt(0);
+        return first == '=' || first == '+' || first == '-' || first == '@' || first == '\t' || first == '\r';
+    }
+
+    private boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == delimiter || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
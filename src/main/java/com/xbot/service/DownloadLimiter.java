@@ -0,0 +1,97 @@
+package com.xbot.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds concurrent file downloads: at most {@code maxTotal} at once and at most {@code maxPerUser}
+ * for one user.
+ * <p>
+ * Downloads run on virtual threads, so a waiting download only parks its virtual thread. The user
+ * permit is taken before the global one, so downloads queued by one user do not hold global permits.
+ */
+public class DownloadLimiter {
+
+    private final Semaphore global;
+    private final int maxPerUser;
+    private final Map<Long, UserPermits> perUser = new ConcurrentHashMap<>();
+
+    public DownloadLimiter(int maxTotal, int maxPerUser) {
+        this.global = new Semaphore(Math.max(1, maxTotal), true);
+        this.maxPerUser = Math.max(1, maxPerUser);
+    }
+
+    /**
+     * Blocks until the user may start one more download; close the returned permit when it is done.
+     */
+    public Permit acquire(Long userId) throws InterruptedException {
+        UserPermits user = perUser.compute(userId, (id, permits) -> {
+            UserPermits result = permits != null ? permits : new UserPermits(maxPerUser);
+            result.holders++;
+            return result;
+        });
+        try {
+            user.semaphore.acquire();
+            try {
+                global.acquire();
+            } catch (InterruptedException e) {
+                user.semaphore.release();
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            leave(userId);
+            throw e;
+        }
+        return new Permit(userId, user);
+    }
+
+    /**
+     * Downloads running or waiting for the user.
+     */
+    int pending(Long userId) {
+        UserPermits user = perUser.get(userId);
+        return user != null ? user.holders : 0;
+    }
+
+    int availableGlobal() {
+        return global.availablePermits();
+    }
+
+    private void leave(Long userId) {
+        // Drop the user's semaphore once nobody holds or waits for it
+        perUser.computeIfPresent(userId, (id, permits) -> --permits.holders == 0 ? null : permits);
+    }
+
+    private static final class UserPermits {
+        final Semaphore semaphore;
+        // Changed only inside the map's compute
+        volatile int holders;
+
+        UserPermits(int permits) {
+            this.semaphore = new Semaphore(permits, true);
+        }
+    }
+
+    public final class Permit implements AutoCloseable {
+        private final Long userId;
+        private final UserPermits user;
+        private boolean released;
+
+        private Permit(Long userId, UserPermits user) {
+            this.userId = userId;
+            this.user = user;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            global.release();
+            user.semaphore.release();
+            leave(userId);
+        }
+    }
+}
@@ -1,30 +1,72 @@
 package com.xbot.service;
 
+import com.xbot.model.ExtractionResult;
 import com.xbot.model.User;
+import com.xbot.model.UserIndex;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Set;
 
 /**
  * Generates Excel files from extraction results.
+ * <p>
+ * Sheets are written through {@link SXSSFWorkbook}: only the last {@code rowWindow} rows of a sheet
+ * stay on heap, older ones are flushed to a compressed temp file, and strings are written inline
+ * instead of through the shared strings table, so memory does not grow with the number of users.
+ * <p>
+ * Column widths are computed from the longest value written to each column ({@link ColumnWidths});
+ * {@link Sheet#autoSizeColumn} is used only for sheets of at most {@code autoSizeMaxRows} rows.
  */
-public class ExcelGenerator {
+public class ExcelGenerator implements ResultWriter {
+
+    /** Rows kept in memory per sheet, same as the SXSSF default. */
+    public static final int DEFAULT_ROW_WINDOW = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+
+    static final String[] HEADERS = {"№", "Telegram ID", "Имя и фамилия", "Ссылка на профиль", "Дата экспорта"};
+    static final String[] HEADERS_WITH_ACTIVITY = {"№", "Telegram ID", "Имя и фамилия", "Ссылка на профиль",
+            "Дата экспорта", "Сообщений", "Первое сообщение (UTC)", "Последнее сообщение (UTC)", "Упоминаний"};
+
+    /** Width of a "yyyy-mm-dd hh:mm:ss" date cell, in characters. */
+    private static final int DATE_TIME_CHARS = 19;
+
+    private final int rowWindow;
+    private final int autoSizeMaxRows;
+
+    public ExcelGenerator() {
+        this(DEFAULT_ROW_WINDOW, 0);
+    }
+
+    /**
+     * @param rowWindow       rows kept in memory per sheet
+     * @param autoSizeMaxRows sheets with at most this many data rows are sized by font metrics, 0 disables it
+     */
+    public ExcelGenerator(int rowWindow, int autoSizeMaxRows) {
+        if (rowWindow < 1) {
+            throw new IllegalArgumentException("rowWindow must be positive: " + rowWindow);
+        }
+        this.rowWindow = rowWindow;
+        this.autoSizeMaxRows = Math.max(0, autoSizeMaxRows);
+    }
 
     public File generateUsersExcel(List<User> users, String chatName, String tempDirectory) throws IOException {
         String fileName = "telegram_users_" + System.currentTimeMillis() + ".xlsx";
         File tempFile = new File(tempDirectory, fileName);
 
-        try (Workbook workbook = new XSSFWorkbook();
-             FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+        SXSSFWorkbook workbook = newWorkbook();
+        try (workbook; FileOutputStream outputStream = new FileOutputStream(tempFile)) {
 
-            Sheet sheet = workbook.createSheet("Участники чата");
+            SXSSFSheet sheet = workbook.createSheet("Участники чата");
+            boolean autoSize = autoSize(sheet, users.size());
 
             // Стили
             CellStyle headerStyle = workbook.createCellStyle();
@@ -35,12 +77,13 @@ public class ExcelGenerator {
 
             // Заголовки
             Row headerRow = sheet.createRow(0);
-            String[] headers = {"№", "Telegram ID", "Имя и фамилия", "Ссылка на профиль", "Дата экспорта"};
+            ColumnWidths widths = new ColumnWidths(HEADERS.length);
 
-            for (int i = 0; i < headers.length; i++) {
+            for (int i = 0; i < HEADERS.length; i++) {
                 Cell cell = headerRow.createCell(i);
-                cell.setCellValue(headers[i]);
+                cell.setCellValue(HEADERS[i]);
                 cell.setCellStyle(headerStyle);
+                widths.trackHeader(i, HEADERS[i]);
             }
 
             // Данные
@@ -51,36 +94,75 @@ public class ExcelGenerator {
             int counter = 1;
             for (User user : users) {
                 Row row = sheet.createRow(rowNum++);
+                String link = "https://web.telegram.org/k/#" + user.telegramId();
 
                 row.createCell(0).setCellValue(counter++);
                 row.createCell(1).setCellValue(user.telegramId());
                 row.createCell(2).setCellValue(user.fullName());
-                row.createCell(3).setCellValue("https://web.telegram.org/k/#" + user.telegramId());
+                row.createCell(3).setCellValue(link);
                 row.createCell(4).setCellValue(exportDate);
-            }
 
-            // Автоподбор ширины колонок
-            for (int i = 0; i < headers.length; i++) {
-                sheet.autoSizeColumn(i);
+                widths.track(1, user.telegramId());
+                widths.track(2, user.fullName());
+                widths.track(3, link);
             }
+            widths.trackNumber(0, counter - 1);
+            widths.track(4, exportDate);
+
+            // Ширина колонок
+            applyWidths(sheet, widths, autoSize);
 
             // Записываем в файл
             workbook.write(outputStream);
+        } finally {
+            workbook.dispose();
         }
 
         return tempFile;
     }
 
+    /**
+     * Generates Excel with separate sheets for participants, mentions, and channels,
+     * with activity columns when the result carries a user index.
+     */
+    public File generateExcel(ExtractionResult result, String chatName, String tempDirectory) throws IOException {
+        return generateExcel(result.participants(), result.mentions(), result.channels(), result.users(),
+                chatName, tempDirectory);
+    }
+
     /**
      * Generates Excel with separate sheets for participants, mentions, and channels.
      */
     public File generateExcel(Set<User> participants, Set<User> mentions, Set<User> channels,
                               String chatName, String tempDirectory) throws IOException {
+        return generateExcel(participants, mentions, channels, null, chatName, tempDirectory);
+    }
+
+    private File generateExcel(Set<User> participants, Set<User> mentions, Set<User> channels, UserIndex activity,
+                               String chatName, String tempDirectory) throws IOException {
         String fileName = "telegram_users_" + System.currentTimeMillis() + ".xlsx";
         File tempFile = new File(tempDirectory, fileName);
 
-        try (Workbook workbook = new XSSFWorkbook();
-             FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+            writeWorkbook(participants, mentions, channels, activity, outputStream);
+        }
+
+        return tempFile;
+    }
+
+    /**
+     * Writes the workbook for the result to {@code out} without closing it.
+     */
+    @Override
+    public void write(ExtractionResult result, OutputStream out) throws IOException {
+        writeWorkbook(result.participants(), result.mentions(), result.channels(), result.users(), out);
+        out.flush();
+    }
+
+    private void writeWorkbook(Set<User> participants, Set<User> mentions, Set<User> channels, UserIndex activity,
+                               OutputStream outputStream) throws IOException {
+        SXSSFWorkbook workbook = newWorkbook();
+        try (workbook) {
 
             // Header style
             CellStyle headerStyle = workbook.createCellStyle();
@@ -91,15 +173,18 @@ public class ExcelGenerator {
 
             String exportDate = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
 
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd hh:mm:ss"));
+
             // Create sheets
             if (!participants.isEmpty()) {
-                createUserSheet(workbook, "Участники", participants, headerStyle, exportDate);
+                createUserSheet(workbook, "Участники", participants, activity, headerStyle, dateStyle, exportDate);
             }
             if (!mentions.isEmpty()) {
-                createUserSheet(workbook, "Упоминания", mentions, headerStyle, exportDate);
+                createUserSheet(workbook, "Упоминания", mentions, activity, headerStyle, dateStyle, exportDate);
             }
             if (!channels.isEmpty()) {
-                createUserSheet(workbook, "Каналы", channels, headerStyle, exportDate);
+                createUserSheet(workbook, "Каналы", channels, activity, headerStyle, dateStyle, exportDate);
             }
 
             // If all empty, create empty sheet
@@ -108,22 +193,30 @@ public class ExcelGenerator {
             }
 
             workbook.write(outputStream);
+        } finally {
+            workbook.dispose();
         }
+    }
 
-        return tempFile;
+    private SXSSFWorkbook newWorkbook() {
+        // compressTmpFiles = true, useSharedStringsTable = false (inline strings)
+        return new SXSSFWorkbook(null, rowWindow, true, false);
     }
 
-    private void createUserSheet(Workbook workbook, String sheetName, Set<User> users,
-                                  CellStyle headerStyle, String exportDate) {
-        Sheet sheet = workbook.createSheet(sheetName);
+    private void createUserSheet(SXSSFWorkbook workbook, String sheetName, Set<User> users, UserIndex activity,
+                                  CellStyle headerStyle, CellStyle dateStyle, String exportDate) {
+        SXSSFSheet sheet = workbook.createSheet(sheetName);
+        boolean autoSize = autoSize(sheet, users.size());
 
         // Headers
         Row headerRow = sheet.createRow(0);
-        String[] headers = {"№", "Telegram ID", "Имя и фамилия", "Ссылка на профиль", "Дата экспорта"};
+        String[] headers = activity != null ? HEADERS_WITH_ACTIVITY : HEADERS;
+        ColumnWidths widths = new ColumnWidths(headers.length);
         for (int i = 0; i < headers.length; i++) {
             Cell cell = headerRow.createCell(i);
             cell.setCellValue(headers[i]);
             cell.setCellStyle(headerStyle);
+            widths.trackHeader(i, headers[i]);
         }
 
         // Data
@@ -131,20 +224,77 @@ public class ExcelGenerator {
         int counter = 1;
         for (User user : users) {
             Row row = sheet.createRow(rowNum++);
+            String telegramId = user.telegramId() != null ? user.telegramId() : "";
+            String fullName = user.fullName() != null ? user.fullName() : "";
+            String link = formatProfileLink(user);
             row.createCell(0).setCellValue(counter++);
-            row.createCell(1).setCellValue(user.telegramId() != null ? user.telegramId() : "");
-            row.createCell(2).setCellValue(user.fullName() != null ? user.fullName() : "");
-            row.createCell(3).setCellValue(formatProfileLink(user));
+            row.createCell(1).setCellValue(telegramId);
+            row.createCell(2).setCellValue(fullName);
+            row.createCell(3).setCellValue(link);
             row.createCell(4).setCellValue(exportDate);
+            widths.track(1, telegramId);
+            widths.track(2, fullName);
+            widths.track(3, link);
+            if (activity != null) {
+                writeActivity(row, activity, activity.find(user.telegramId()), dateStyle, widths);
+            }
+        }
+        widths.trackNumber(0, counter - 1);
+        widths.track(4, exportDate);
+        if (activity != null) {
+            widths.trackChars(6, DATE_TIME_CHARS);
+            widths.trackChars(7, DATE_TIME_CHARS);
         }
 
-        // Auto-size columns
-        for (int i = 0; i < headers.length; i++) {
+        applyWidths(sheet, widths, autoSize);
+    }
+
+    /**
+     * Enables font-metric autosizing for small sheets; it has to be switched on before rows are flushed.
+     */
+    private boolean autoSize(SXSSFSheet sheet, int rows) {
+        if (rows > autoSizeMaxRows) {
+            return false;
+        }
+        sheet.trackAllColumnsForAutoSizing();
+        return true;
+    }
+
+    private void applyWidths(SXSSFSheet sheet, ColumnWidths widths, boolean autoSize) {
+        if (!autoSize) {
+            widths.apply(sheet);
+            return;
+        }
+        for (int i = 0; i < widths.columns(); i++) {
             sheet.autoSizeColumn(i);
         }
     }
 
-    private String formatProfileLink(User user) {
+    /**
+     * Message count, first/last message time (UTC) and mention count; dates are converted only here, once per user.
+     */
+    private void writeActivity(Row row, UserIndex activity, int entry, CellStyle dateStyle, ColumnWidths widths) {
+        if (entry < 0) {
+            return;
+        }
+        row.createCell(5).setCellValue(activity.messageCount(entry));
+        writeTime(row.createCell(6), activity.firstMessageTime(entry), dateStyle);
+        writeTime(row.createCell(7), activity.lastMessageTime(entry), dateStyle);
+        row.createCell(8).setCellValue(activity.mentionCount(entry));
+        widths.trackNumber(5, activity.messageCount(entry));
+        widths.trackNumber(8, activity.mentionCount(entry));
+    }
+
+    private void writeTime(Cell cell, long unixTime, CellStyle dateStyle) {
+        if (unixTime == 0) {
+            cell.setCellValue("");
+            return;
+        }
+        cell.setCellValue(LocalDateTime.ofEpochSecond(unixTime, 0, ZoneOffset.UTC));
+        cell.setCellStyle(dateStyle);
+    }
+
+    static String formatProfileLink(User user) {
         if (user.telegramId() == null) {
             return "";
         }
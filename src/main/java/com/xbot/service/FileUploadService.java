@@ -70,7 +70,7 @@ public class FileUploadService {
 
         // Check file format
         if (!uploadedFile.isSupportedFormat()) {
-            throw new InvalidFileFormatException("Unsupported file format. Please upload HTML or JSON files.");
+            throw new InvalidFileFormatException("Unsupported file format. Please upload HTML, JSON, ZIP or .json.gz/.html.gz files.");
         }
 
         // Download file from Telegram
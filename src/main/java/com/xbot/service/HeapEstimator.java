@@ -0,0 +1,95 @@
+package com.xbot.service;
+
+import com.xbot.model.UploadedFile;
+import com.xbot.parser.JsonChatParser;
+
+import java.util.List;
+
+/**
+ * Rough heap need of parsing an uploaded file and of building the report from the parse results.
+ * <p>
+ * Both parsers stream: HTML is split into messages and each one gets its own small DOM, JSON is read token by
+ * token. A parse needs a fixed part for buffers, and what grows with the file is the index of users found so
+ * far. Large plain JSON files are parsed in chunks, which adds the chunks in flight and their indexes.
+ * Compressed files are counted by their unpacked size. The factors are checked against real parses in
+ * {@code HeapEstimatorTest}.
+ * <p>
+ * The percentages are keyed by {@link com.xbot.parser.ChatHistoryParser#getFormatName()}.
+ */
+final class HeapEstimator {
+
+    /** Heap of a report job besides the parse results it merges. */
+    static final long JOB_OVERHEAD = 16L * 1024 * 1024;
+    /** Heap of one parse besides the user index: read buffers, one message's DOM or JSON tokens. */
+    static final long PARSE_OVERHEAD = 8L * 1024 * 1024;
+    /**
+     * User index of an export with a new user in every message, in percent of the export size: compact markup
+     * of about 300 bytes per message measured 95% (JSON) and 110% (HTML), real Telegram markup about half that.
+     */
+    static final int INDEX_PERCENT = 150;
+    static final int HTML_PERCENT = INDEX_PERCENT;
+    static final int JSON_PERCENT = INDEX_PERCENT;
+    /** Unpacked bytes per compressed byte; exports are repetitive markup and measured 20 to 36. */
+    static final int COMPRESSION_RATIO = 40;
+
+    private HeapEstimator() {
+    }
+
+    /**
+     * Heap of a report job: it holds the parse results of all files while merging them. The job starts once
+     * the parses are done, so a result is charged here and no longer by its parse.
+     */
+    static long estimate(List<UploadedFile> files) {
+        long total = JOB_OVERHEAD;
+        for (UploadedFile file : files) {
+            total += unpackedSize(file) / 100 * INDEX_PERCENT;
+        }
+        return total;
+    }
+
+    /**
+     * Heap of parsing one file.
+     */
+    static long estimateParse(UploadedFile file) {
+        String format = format(file);
+        // The entries of a ZIP are only known once it is read, so the heavier format is assumed
+        int percent = format != null ? percent(format) : Math.max(JSON_PERCENT, HTML_PERCENT);
+        return PARSE_OVERHEAD + unpackedSize(file) / 100 * percent + chunkHeap(file);
+    }
+
+    /**
+     * Heap of the chunks a parallel JSON parse holds besides the file's index: the chunks being parsed, the
+     * one being read and the indexes of the parsed ones until they are merged.
+     */
+    static long chunkHeap(UploadedFile file) {
+        int chunks = JsonChatParser.chunksInFlight();
+        if (chunks == 0 || !file.isJsonFile() || file.getFileSize() < JsonChatParser.PARALLEL_THRESHOLD_BYTES) {
+            return 0;
+        }
+        long chunkBytes = JsonChatParser.CHUNK_BYTES;
+        return (chunks + 1) * chunkBytes + chunks * (chunkBytes / 100 * INDEX_PERCENT);
+    }
+
+    /**
+     * Share of the unpacked size a parser of the format keeps on the heap, in percent.
+     */
+    static int percent(String formatName) {
+        return "JSON".equals(formatName) ? JSON_PERCENT : HTML_PERCENT;
+    }
+
+    /**
+     * Format of the export inside the file, by its name; null for a ZIP archive, which may hold either.
+     */
+    static String format(UploadedFile file) {
+        if (file.isZipFile()) {
+            return null;
+        }
+        String name = file.getFileName() != null ? file.getFileName().toLowerCase() : "";
+        boolean json = file.isGzipFile() ? name.endsWith(".json.gz") : file.isJsonFile();
+        return json ? "JSON" : "HTML";
+    }
+
+    private static long unpackedSize(UploadedFile file) {
+        return file.isZipFile() || file.isGzipFile() ? file.getFileSize() * COMPRESSION_RATIO : file.getFileSize();
+    }
+}
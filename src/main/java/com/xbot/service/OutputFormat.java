@@ -0,0 +1,42 @@
+package com.xbot.service;
+
+import java.util.Locale;
+
+/**
+ * File formats a result can be sent in.
+ */
+public enum OutputFormat {
+    EXCEL("xlsx"),
+    CSV("csv"),
+    TSV("tsv"),
+    CSV_GZIP("csv.gz");
+
+    private final String extension;
+
+    OutputFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * File extension without the leading dot.
+     */
+    public String extension() {
+        return extension;
+    }
+
+    /**
+     * Format by its extension or name as typed in {@code /format}, {@code null} if unknown.
+     */
+    public static OutputFormat fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "xlsx", "excel" -> EXCEL;
+            case "csv" -> CSV;
+            case "tsv" -> TSV;
+            case "csv.gz", "gz", "gzip" -> CSV_GZIP;
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,108 @@
+package com.xbot.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends messages through a queue paced to Telegram's rate limits: at most one message per
+ * {@code chatInterval} in one chat and one per {@code globalInterval} overall.
+ * <p>
+ * A message gets its chat's next send slot when it is enqueued, so messages of one chat go out in order.
+ * Sends run on one thread that keeps at least {@code globalInterval} between calls, so the number of
+ * API calls per second stays predictable.
+ */
+public class PacedMessageSender {
+
+    private static final Logger log = LoggerFactory.getLogger(PacedMessageSender.class);
+
+    /** Roughly 1 message per second per chat and 30 per second overall. */
+    public static final long DEFAULT_CHAT_INTERVAL_MS = 1000;
+    public static final long DEFAULT_GLOBAL_INTERVAL_MS = 35;
+
+    private static final int PRUNE_THRESHOLD = 1024;
+
+    private final TelegramClient telegramClient;
+    private final ScheduledExecutorService scheduler;
+    private final long chatIntervalNanos;
+    private final long globalIntervalNanos;
+
+    private final Map<String, Long> nextChatSlot = new HashMap<>();
+    // Only touched on the scheduler thread
+    private long lastSend;
+    private boolean sentBefore;
+
+    public PacedMessageSender(TelegramClient telegramClient) {
+        this(telegramClient, DEFAULT_CHAT_INTERVAL_MS, DEFAULT_GLOBAL_INTERVAL_MS);
+    }
+
+    public PacedMessageSender(TelegramClient telegramClient, long chatIntervalMs, long globalIntervalMs) {
+        this.telegramClient = telegramClient;
+        this.chatIntervalNanos = TimeUnit.MILLISECONDS.toNanos(chatIntervalMs);
+        this.globalIntervalNanos = TimeUnit.MILLISECONDS.toNanos(globalIntervalMs);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "paced-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues the message; the future completes when it is sent or fails with the send error.
+     */
+    public CompletableFuture<Void> enqueue(SendMessage message) {
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        long delay = reserveSlot(message.getChatId());
+        scheduler.schedule(() -> {
+            try {
+                awaitGlobalInterval();
+                telegramClient.execute(message);
+                sent.complete(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sent.completeExceptionally(e);
+            } catch (Exception e) {
+                log.error("Failed to send message to chat {}: {}", message.getChatId(), e.getMessage(), e);
+                sent.completeExceptionally(e);
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+        return sent;
+    }
+
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Returns the delay in nanoseconds until the next free slot for the chat and takes that slot.
+     */
+    synchronized long reserveSlot(String chatId) {
+        long now = System.nanoTime();
+        if (nextChatSlot.size() > PRUNE_THRESHOLD) {
+            nextChatSlot.values().removeIf(slot -> slot - now <= 0);
+        }
+        Long chatSlot = nextChatSlot.get(chatId);
+        long slot = chatSlot != null && chatSlot - now > 0 ? chatSlot : now;
+        nextChatSlot.put(chatId, slot + chatIntervalNanos);
+        return slot - now;
+    }
+
+    private void awaitGlobalInterval() throws InterruptedException {
+        if (sentBefore) {
+            long wait = lastSend + globalIntervalNanos - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+        sentBefore = true;
+        lastSend = System.nanoTime();
+    }
+}
@@ -0,0 +1,292 @@
+package com.xbot.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs jobs of users on a fixed number of worker threads; jobs beyond that wait in a bounded queue. One
+ * scheduler parses uploaded files ({@link ChatParsingService}), another merges the parse results and writes
+ * and sends the report ({@link SessionService}).
+ * <p>
+ * Every job states its expected heap need, and running jobs together stay within {@code heapBudget}: a job
+ * that does not fit waits until earlier ones finish, so load turns into queuing instead of an
+ * OutOfMemoryError. A job larger than the whole budget still runs, but only when nothing else does.
+ * <p>
+ * Waiting jobs are ordered fairly between users (self-clocked fair queuing): a job's tag is its user's
+ * previous tag, or the tag of the last started job if that is later, plus the job's heap need. Jobs start
+ * in tag order, so a user with one small file is served ahead of the queued heavy jobs of another user.
+ * Jobs needing more than {@link #SMALL_JOB_PERCENT} of the budget are heavy: they are charged at most the
+ * rest of the budget and, with several workers, leave one worker free, so small jobs keep running next to
+ * a heavy one.
+ * <p>
+ * {@link #submit} tells the caller the job's place in the queue, so the user can be told how long the line
+ * is, and rejects the job when the queue is full instead of letting heavy jobs pile up in memory.
+ */
+public class ProcessingScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessingScheduler.class);
+
+    /** Heap one running job is expected to need when the worker count is derived from the heap size. */
+    static final long HEAP_PER_WORKER = 128L * 1024 * 1024;
+    public static final int DEFAULT_QUEUE_CAPACITY = 20;
+    /** Report jobs only hold parse results; parsing has its own budget, see {@link ChatParsingService}. */
+    public static final int DEFAULT_HEAP_PERCENT = 20;
+    /** Share of the heap budget kept for small jobs. */
+    static final int SMALL_JOB_PERCENT = 25;
+
+    private static final int PRUNE_THRESHOLD = 1024;
+
+    private final int workers;
+    private final int queueCapacity;
+    private final long heapBudget;
+    private final long smallJobHeap;
+    private final ExecutorService executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final NavigableSet<Job> queue = new TreeSet<>(
+            Comparator.comparingLong(Job::tag).thenComparingLong(Job::sequence));
+    // Last tag given to each user's job; entries not above virtualTime no longer matter
+    private final Map<Long, Long> lastTag = new HashMap<>();
+    private long virtualTime;
+    private long sequence;
+    private int running;
+    private int heavyRunning;
+    private int heavyWaiting;
+    private long reservedHeap;
+    private long heavyReservedHeap;
+    private boolean shutdown;
+
+    public ProcessingScheduler(int workers, int queueCapacity) {
+        this(workers, queueCapacity, heapBudget(DEFAULT_HEAP_PERCENT));
+    }
+
+    /**
+     * @param workers       number of jobs running at once; 0 or less picks {@link #defaultWorkers()}
+     * @param queueCapacity number of jobs allowed to wait
+     * @param heapBudget    bytes of heap all running jobs may need together
+     */
+    public ProcessingScheduler(int workers, int queueCapacity, long heapBudget) {
+        this(workers, queueCapacity, heapBudget, "processing-worker");
+    }
+
+    ProcessingScheduler(int workers, int queueCapacity, long heapBudget, String threadName) {
+        this.workers = workers > 0 ? workers : defaultWorkers();
+        this.queueCapacity = Math.max(0, queueCapacity);
+        this.heapBudget = heapBudget;
+        this.smallJobHeap = heapBudget / 100 * SMALL_JOB_PERCENT;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.workers, runnable -> {
+            Thread thread = new Thread(runnable, threadName + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Scheduler {}: {} workers, queue capacity {}, heap budget {} MB",
+                threadName, this.workers, this.queueCapacity, heapBudget / (1024 * 1024));
+    }
+
+    /**
+     * One worker per core, but no more than the heap can hold at {@link #HEAP_PER_WORKER} per job.
+     */
+    public static int defaultWorkers() {
+        long byHeap = Runtime.getRuntime().maxMemory() / HEAP_PER_WORKER;
+        return (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), byHeap));
+    }
+
+    /**
+     * The given percentage of the maximum heap.
+     */
+    public static long heapBudget(int percent) {
+        return Runtime.getRuntime().maxMemory() / 100 * Math.max(1, Math.min(100, percent));
+    }
+
+    /**
+     * Queues the job of the user.
+     *
+     * @param heapBytes expected heap need of the job; also its cost when sharing workers between users
+     * @return 0 if the job started right away, otherwise its 1-based position among waiting jobs
+     * @throws RejectedExecutionException if the queue is full or the scheduler is shut down
+     */
+    public int submit(Long userId, Runnable job, long heapBytes) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("Processing scheduler is shut down");
+            }
+            Long previousTag = lastTag.get(userId);
+            long start = Math.max(virtualTime, previousTag != null ? previousTag : 0L);
+            Job queued = new Job(userId, job, heapBytes, start + Math.max(1, heapBytes), sequence++);
+            lastTag.put(userId, queued.tag);
+            queue.add(queued);
+            if (heavy(heapBytes)) {
+                heavyWaiting++;
+            }
+            dispatch();
+            if (!queue.contains(queued)) {
+                return 0;
+            }
+            if (queue.size() > queueCapacity) {
+                queue.remove(queued);
+                if (heavy(heapBytes)) {
+                    heavyWaiting--;
+                }
+                if (previousTag != null) {
+                    lastTag.put(userId, previousTag);
+                } else {
+                    lastTag.remove(userId);
+                }
+                throw new RejectedExecutionException("Processing queue is full (" + queueCapacity + " jobs)");
+            }
+            return queue.headSet(queued).size() + 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting jobs; queued and running jobs still complete.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            shutdownIfDrained();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int workers() {
+        return workers;
+    }
+
+    int running() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long reservedHeap() {
+        lock.lock();
+        try {
+            return reservedHeap;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean heavy(long heapBytes) {
+        return heapBytes > smallJobHeap;
+    }
+
+    /**
+     * Heap a job is charged while it runs: a heavy job never takes the share kept for small jobs.
+     */
+    private long charge(long heapBytes) {
+        return heavy(heapBytes) ? Math.min(heapBytes, heapBudget - smallJobHeap) : heapBytes;
+    }
+
+    private boolean canStart(long heapBytes) {
+        if (running == 0) {
+            return true;
+        }
+        if (running >= workers) {
+            return false;
+        }
+        if (heavy(heapBytes)) {
+            return heavyRunning < Math.max(1, workers - 1)
+                    && reservedHeap + charge(heapBytes) <= heapBudget;
+        }
+        if (reservedHeap + heapBytes > heapBudget) {
+            return false;
+        }
+        // While a heavy job waits, small jobs stay within their own share so the heavy one gets its turn
+        return heavyWaiting == 0 || reservedHeap - heavyReservedHeap + heapBytes <= smallJobHeap;
+    }
+
+    /**
+     * Starts waiting jobs in tag order while they fit. A small job that does not fit is passed over;
+     * once a heavy job does not fit, later heavy jobs wait behind it.
+     */
+    private void dispatch() {
+        boolean heavyBlocked = false;
+        Iterator<Job> waiting = queue.iterator();
+        while (waiting.hasNext() && running < workers) {
+            Job job = waiting.next();
+            boolean heavy = heavy(job.heapBytes);
+            if (heavy && heavyBlocked || !canStart(job.heapBytes)) {
+                heavyBlocked |= heavy;
+                continue;
+            }
+            waiting.remove();
+            long charge = charge(job.heapBytes);
+            if (heavy) {
+                heavyWaiting--;
+                heavyRunning++;
+                heavyReservedHeap += charge;
+            }
+            running++;
+            reservedHeap += charge;
+            virtualTime = Math.max(virtualTime, job.tag);
+            if (lastTag.size() > PRUNE_THRESHOLD) {
+                lastTag.values().removeIf(tag -> tag <= virtualTime);
+            }
+            executor.execute(() -> run(job, heavy));
+        }
+    }
+
+    private void run(Job job, boolean heavy) {
+        try {
+            job.task.run();
+        } catch (RuntimeException e) {
+            log.error("Job of user {} failed", job.userId, e);
+        } finally {
+            lock.lock();
+            try {
+                long charge = charge(job.heapBytes);
+                running--;
+                if (heavy) {
+                    heavyRunning--;
+                    heavyReservedHeap -= charge;
+                }
+                reservedHeap -= charge;
+                dispatch();
+                shutdownIfDrained();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void shutdownIfDrained() {
+        if (shutdown && running == 0 && queue.isEmpty()) {
+            executor.shutdown();
+        }
+    }
+
+    private record Job(Long userId, Runnable task, long heapBytes, long tag, long sequence) {
+    }
+}
@@ -0,0 +1,17 @@
+package com.xbot.service;
+
+import com.xbot.model.ExtractionResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes an extraction result as a downloadable file in one output format.
+ */
+public interface ResultWriter {
+
+    /**
+     * Writes the whole result to {@code out} and flushes it; the stream is left open.
+     */
+    void write(ExtractionResult result, OutputStream out) throws IOException;
+}
@@ -0,0 +1,39 @@
+package com.xbot.service;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Picks the output format for a result and the writer for it.
+ * <p>
+ * Without a user preference results up to {@code csvThreshold} users go to Excel, larger ones to gzip-compressed CSV,
+ * which is written in one streaming pass and is much smaller to download.
+ */
+public class ResultWriters {
+
+    private final Map<OutputFormat, ResultWriter> writers = new EnumMap<>(OutputFormat.class);
+    private final int csvThreshold;
+
+    public ResultWriters(ExcelGenerator excelGenerator, int csvThreshold) {
+        this.csvThreshold = csvThreshold;
+        writers.put(OutputFormat.EXCEL, excelGenerator);
+        writers.put(OutputFormat.CSV, new CsvResultWriter(',', false));
+        writers.put(OutputFormat.TSV, new CsvResultWriter('\t', false));
+        writers.put(OutputFormat.CSV_GZIP, new CsvResultWriter(',', true));
+    }
+
+    /**
+     * @param userCount users in the result
+     * @param preferred format chosen by the user, {@code null} for automatic choice
+     */
+    public OutputFormat choose(int userCount, OutputFormat preferred) {
+        if (preferred != null) {
+            return preferred;
+        }
+        return userCount > csvThreshold ? OutputFormat.CSV_GZIP : OutputFormat.EXCEL;
+    }
+
+    public ResultWriter get(OutputFormat format) {
+        return writers.get(format);
+    }
+}
@@ -10,10 +10,31 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Manages user sessions and uploaded files
+ * <p>
+ * Debounce timers of all sessions share one scheduler thread. Every upload only moves the session's
+ * deadline forward; the scheduled check re-arms itself for the remaining time until the deadline passes,
+ * then, once the parses started on arrival are done, hands the job to a {@link ProcessingScheduler}, which bounds
+ * how many jobs run at once and how many wait;
+ * the job's heap need is estimated from the sizes and formats of its files ({@link HeapEstimator}).
+ * <p>
+ * Sessions are keyed by (userId, chatId) and every session has its own lock: all session state is read and
+ * changed under it, and no method locks more than one session. Processing itself runs outside the lock on a
+ * snapshot of the files, while the session is in {@link UserSessionState#PROCESSING}.
  */
 public class SessionService {
     private static final Logger log = LoggerFactory.getLogger(SessionService.class);
@@ -26,11 +47,19 @@ public class SessionService {
         PROCESSING
     }
 
+    private record SessionKey(Long userId, Long chatId) {
+    }
+
     private static class UserSession{
+        final ReentrantLock lock = new ReentrantLock();
+        // Set under the lock when the session leaves the map; callers holding it must look it up again
+        boolean removed;
         Long userId;
         List<UploadedFile> files = new ArrayList<>();
         UserSessionState state = UserSessionState.IDLE;
-        Timer timer;
+        // System.nanoTime() after which processing starts; moved forward by every upload
+        volatile long processDeadline;
+        ScheduledFuture<?> processTimer;
         LocalDateTime lastActivity;
         Long chatId;
         boolean maxFilesErrorMsgFlag;
@@ -47,55 +76,117 @@ public class SessionService {
         void deleteFiles() {
             if (!files.isEmpty()) {
                 for (var currentFile : files) {
-                    if (currentFile.getLocalPath() != null) {
-                        try {
-                            Files.deleteIfExists(Paths.get(currentFile.getLocalPath()));
-                            log.debug("Deleted file: {}", currentFile.getLocalPath());
-                        } catch (IOException e) {
-                            log.warn("Failed to delete file: {}", currentFile.getLocalPath(), e);
-                        }
-                    }
+                    deleteFile(currentFile);
                 }
                 files.clear();
             }
         }
     }
 
+    private static void deleteFile(UploadedFile file) {
+        file.cancelParse();
+        if (file.getLocalPath() != null) {
+            try {
+                Files.deleteIfExists(Paths.get(file.getLocalPath()));
+                log.debug("Deleted file: {}", file.getLocalPath());
+            } catch (IOException e) {
+                log.warn("Failed to delete file: {}", file.getLocalPath(), e);
+            }
+        }
+    }
+
     public interface ProcessingCallback {
+        /**
+         * Called when a downloaded file joins the session, before the processing timer fires.
+         * A {@link RejectedExecutionException} drops the file from the session and reaches the caller of addFile.
+         */
+        void onFileAdded(Long userId, Long chatId, UploadedFile file);
         boolean onProcessingBegin(Long userId, Long chatId, List<UploadedFile> files) throws Exception;
         void onProcessingComplete(Long chatId);
         void onProcessingError(Long chatId);
+
+        /**
+         * Called when the job has to wait for a free worker; position is 1-based.
+         * Runs on the session scheduler thread or on the thread that finished the last parse, so it must not block.
+         */
+        default void onProcessingQueued(Long chatId, int position) {
+        }
+
+        /**
+         * Called when the processing queue is full; the session's files are already dropped.
+         * Runs on the session scheduler thread or on the thread that finished the last parse, so it must not block.
+         */
+        default void onProcessingRejected(Long chatId) {
+            onProcessingError(chatId);
+        }
     }
 
-    // Map: userId -> list of uploaded files
-    private final Map<Long, UserSession> sessions = new ConcurrentHashMap<>();
-    private ProcessingCallback processingCallback;
+    // Map: (userId, chatId) -> session with uploaded files
+    private final Map<SessionKey, UserSession> sessions = new ConcurrentHashMap<>();
+    private volatile ProcessingCallback processingCallback;
 
     private final int maxFilesPerUser;
     private final long sessionTimeoutMinutes;
     private final int processingTimeoutMs;
-    private final Timer cleanupTimer = new Timer("session-cleanup-timer", true);
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("session-scheduler"));
+    private final ProcessingScheduler processingScheduler;
 
     public SessionService(int maxFilesPerUser, long sessionTimeoutMinutes, int processingTimeoutMs) {
+        this(maxFilesPerUser, sessionTimeoutMinutes, processingTimeoutMs,
+                new ProcessingScheduler(0, ProcessingScheduler.DEFAULT_QUEUE_CAPACITY));
+    }
+
+    public SessionService(int maxFilesPerUser, long sessionTimeoutMinutes, int processingTimeoutMs,
+                          ProcessingScheduler processingScheduler) {
         this.maxFilesPerUser = maxFilesPerUser;
         this.sessionTimeoutMinutes = sessionTimeoutMinutes;
         this.processingTimeoutMs = processingTimeoutMs;
+        this.processingScheduler = processingScheduler;
 
-        cleanupTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                cleanupOldSessions();
-            }
-        }, 300000, 300000);
+        scheduler.scheduleAtFixedRate(this::cleanupOldSessions, 5, 5, TimeUnit.MINUTES);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     public void setProcessingCallback(ProcessingCallback callback) {
         this.processingCallback = callback;
     }
 
-    public synchronized void addFile(Long userId, Long chatId, UploadedFile file) {
-        UserSession session = getOrCreateSession(userId, chatId);
+    public void addFile(Long userId, Long chatId, UploadedFile file) {
+        UserSession session = inSession(userId, chatId, s -> {
+            addFile(s, file);
+            return s;
+        });
 
+        // The callback starts the parse; it runs outside the session lock, so a slow or blocking
+        // callback does not hold up the timer or other requests of the session
+        ProcessingCallback callback = processingCallback;
+        if (callback == null) {
+            return;
+        }
+        try {
+            callback.onFileAdded(userId, chatId, file);
+        } catch (RejectedExecutionException e) {
+            // The parse queue is full: the file is dropped, the rest of the session stays.
+            // Once processing has started the report job owns the file and reads it itself
+            locked(session, s -> {
+                if (s.state != UserSessionState.PROCESSING && s.files.remove(file)) {
+                    deleteFile(file);
+                }
+            });
+            throw e;
+        }
+    }
+
+    private void addFile(UserSession session, UploadedFile file) {
         if (session.state == UserSessionState.PROCESSING) {
             throw new BusySessionException("Wait for previous request done!");
         }
@@ -108,145 +199,241 @@ public class SessionService {
         session.lastActivity = LocalDateTime.now();
 
         log.info("Added file {} for user {}, total files: {}, state: {}",
-                file.getFileName(), userId, session.files.size(), session.state);
+                file.getFileName(), session.userId, session.files.size(), session.state);
 
         if (session.state == UserSessionState.IDLE || session.state == UserSessionState.UPLOADING_BGN) {
             session.state = UserSessionState.UPLOADING;
-            startProcessTimer(session);
-        } else if (session.state == UserSessionState.UPLOADING) {
-            resetProcessTimer(session);
+        }
+        if (session.state == UserSessionState.UPLOADING) {
+            scheduleProcessing(session);
         }
     }
 
-    public synchronized void cleanAllFiles() {
-        sessions.values().forEach(UserSession::deleteFiles);
+    public void cleanAllFiles() {
+        for (UserSession session : sessions.values()) {
+            locked(session, UserSession::deleteFiles);
+        }
     }
 
     public int getFileCount(Long userId, Long chatId) {
-        UserSession session = getOrCreateSession(userId, chatId);
-        return session.fileCount;
+        return inSession(userId, chatId, session -> session.fileCount);
     }
 
     public boolean isBusy(Long userId, Long chatId) {
-        UserSession session = getOrCreateSession(userId, chatId);
-        return session.state == UserSessionState.PROCESSING;
+        return inSession(userId, chatId, session -> session.state == UserSessionState.PROCESSING);
     }
 
     public boolean isIdle(Long userId, Long chatId) {
-        UserSession session = getOrCreateSession(userId, chatId);
-        return session.state == UserSessionState.IDLE;
+        return inSession(userId, chatId, session -> session.state == UserSessionState.IDLE);
     }
 
     public void setUploadBegin(Long userId, Long chatId) {
-        UserSession session = getOrCreateSession(userId, chatId);
-        session.state = UserSessionState.UPLOADING_BGN;
+        updateSession(userId, chatId, session -> session.state = UserSessionState.UPLOADING_BGN);
     }
 
-    public synchronized void cleanupOldSessions() {
+    /**
+     * Removes sessions inactive for longer than the timeout; sessions being processed are skipped.
+     */
+    public void cleanupOldSessions() {
         LocalDateTime cutoff = LocalDateTime.now().minusMinutes(sessionTimeoutMinutes);
-        Iterator<Map.Entry<Long, UserSession>> iterator = sessions.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<Long, UserSession> entry = iterator.next();
+        for (Map.Entry<SessionKey, UserSession> entry : sessions.entrySet()) {
             UserSession session = entry.getValue();
-
-            if (session.lastActivity.isBefore(cutoff)) {
-                cancelTimer(session);
-                session.deleteFiles();
-                iterator.remove();
-                log.debug("Removed old session for user: {}", session.userId);
-            }
+            locked(session, s -> {
+                if (s.removed || s.state == UserSessionState.PROCESSING || !s.lastActivity.isBefore(cutoff)) {
+                    return;
+                }
+                s.removed = true;
+                cancelTimer(s);
+                s.deleteFiles();
+                sessions.remove(entry.getKey(), s);
+                log.debug("Removed old session for user: {}", s.userId);
+            });
         }
     }
 
-    public synchronized void stopAllTimers() {
-        cleanupTimer.cancel();
-        sessions.values().forEach(this::cancelTimer);
+    public void stopAllTimers() {
+        for (UserSession session : sessions.values()) {
+            locked(session, this::cancelTimer);
+        }
+        scheduler.shutdownNow();
+        processingScheduler.shutdown();
     }
 
     public boolean maxFilesErrorMsgWasSend(Long userId, Long chatId) {
-        UserSession session = getOrCreateSession(userId, chatId);
-        return session.maxFilesErrorMsgFlag;
+        return inSession(userId, chatId, session -> session.maxFilesErrorMsgFlag);
     }
 
     public void setMaxFilesErrorMsgWasSend(Long userId, Long chatId) {
-        UserSession session = getOrCreateSession(userId, chatId);
-        session.maxFilesErrorMsgFlag = true;
+        updateSession(userId, chatId, session -> session.maxFilesErrorMsgFlag = true);
     }
 
     public void increaseFileCount(Long userId, Long chatId) {
-        UserSession session = getOrCreateSession(userId, chatId);
-        session.fileCount++;
+        updateSession(userId, chatId, session -> session.fileCount++);
     }
 
-    private UserSession getOrCreateSession(Long userId, Long chatId) {
-        return sessions.computeIfAbsent(userId, k -> new UserSession(userId, chatId));
+    /**
+     * Runs the action under the lock of the (userId, chatId) session, creating it if needed.
+     * A session removed by cleanup while we waited for its lock is replaced by a new one.
+     */
+    private <T> T inSession(Long userId, Long chatId, Function<UserSession, T> action) {
+        SessionKey key = new SessionKey(userId, chatId);
+        while (true) {
+            UserSession session = sessions.computeIfAbsent(key, k -> new UserSession(userId, chatId));
+            session.lock.lock();
+            try {
+                if (!session.removed) {
+                    return action.apply(session);
+                }
+            } finally {
+                session.lock.unlock();
+            }
+        }
     }
 
-    private void startProcessTimer(UserSession session) {
-        session.timer = new Timer(true);
-        session.timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                log.info("Timer triggered for user {}", session.userId);
-                triggerProcess(session);
-            }
-        }, processingTimeoutMs);
+    private void updateSession(Long userId, Long chatId, Consumer<UserSession> action) {
+        inSession(userId, chatId, session -> {
+            action.accept(session);
+            return null;
+        });
+    }
+
+    private static void locked(UserSession session, Consumer<UserSession> action) {
+        session.lock.lock();
+        try {
+            action.accept(session);
+        } finally {
+            session.lock.unlock();
+        }
+    }
 
-        log.debug("Started timer for user {} ({} ms)", session.userId, processingTimeoutMs);
+    /**
+     * Moves the session's deadline to now + processingTimeoutMs; schedules a check only if none is pending.
+     */
+    private void scheduleProcessing(UserSession session) {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(processingTimeoutMs);
+        session.processDeadline = System.nanoTime() + timeout;
+        if (session.processTimer == null) {
+            session.processTimer = scheduler.schedule(() -> onProcessTimer(session), timeout, TimeUnit.NANOSECONDS);
+            log.debug("Started timer for user {} ({} ms)", session.userId, processingTimeoutMs);
+        } else {
+            log.debug("Reset timer for user {}", session.userId);
+        }
     }
 
-    private void resetProcessTimer(UserSession session) {
-        cancelTimer(session);
-        startProcessTimer(session);
-        log.debug("Reset timer for user {}", session.userId);
+    private void onProcessTimer(UserSession session) {
+        session.lock.lock();
+        try {
+            if (session.processTimer == null) {
+                return; // cancelled
+            }
+            long remaining = session.processDeadline - System.nanoTime();
+            if (remaining > 0) {
+                session.processTimer = scheduler.schedule(() -> onProcessTimer(session), remaining, TimeUnit.NANOSECONDS);
+                return;
+            }
+            session.processTimer = null;
+        } finally {
+            session.lock.unlock();
+        }
+        log.info("Timer triggered for user {}", session.userId);
+        triggerProcess(session);
     }
 
     private void cancelTimer(UserSession session) {
-        if (session.timer != null) {
-            session.timer.cancel();
-            session.timer = null;
+        if (session.processTimer != null) {
+            session.processTimer.cancel(false);
+            session.processTimer = null;
             log.debug("Cancelled timer for user {}", session.userId);
         }
     }
 
-    private synchronized void triggerProcess(UserSession session) {
-        if (session.state != UserSessionState.UPLOADING) {
-            log.warn("Wooow! Cannot trigger processing for user {}, wrong state {}", session.userId, session.state);
-            return;
-        }
+    private void triggerProcess(UserSession session) {
+        List<UploadedFile> files;
+        session.lock.lock();
+        try {
+            if (session.state != UserSessionState.UPLOADING) {
+                log.warn("Wooow! Cannot trigger processing for user {}, wrong state {}", session.userId, session.state);
+                return;
+            }
 
             if (session.files.isEmpty()) {
                 log.warn("Oops! No files to process for user {}", session.userId);
-                session.state = UserSessionState.IDLE;
-                session.maxFilesErrorMsgFlag = false;
-                session.fileCount = 0;
+                resetAfterProcessing(session);
                 return;
             }
 
             log.info("Triggering processing for user {} with {} files", session.userId, session.files.size());
             session.state = UserSessionState.PROCESSING;
             session.lastActivity = LocalDateTime.now();
-            try {
-                if (processingCallback != null) {
-                    log.debug("Process begin for user: {}", session.userId);
-                    if (processingCallback.onProcessingBegin(session.userId, session.chatId, session.files)) {
-                        processingCallback.onProcessingComplete(session.chatId);
-                    } else {
-                        processingCallback.onProcessingError(session.chatId);
-                    }
-                    session.deleteFiles();
-                }
-            } catch (Exception e) {
-                log.error("Error during process: {}", e.getMessage());
-                Thread.currentThread().interrupt();
-                if (processingCallback != null) {
-                    processingCallback.onProcessingError(session.chatId);
+            files = List.copyOf(session.files);
+        } finally {
+            session.lock.unlock();
+        }
+
+        // The report job takes a worker and its heap only once the parses are done, so it does not hold them
+        // while waiting, and the heap of a parse is charged by the parse scheduler alone
+        CompletableFuture<?>[] parses = files.stream()
+                .map(UploadedFile::getParseResult)
+                .filter(Objects::nonNull)
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(parses).whenComplete((ignored, error) -> submitProcessing(session, files));
+    }
+
+    private void submitProcessing(UserSession session, List<UploadedFile> files) {
+        ProcessingCallback callback = processingCallback;
+        int position;
+        try {
+            position = processingScheduler.submit(session.userId, () -> process(session, files),
+                    HeapEstimator.estimate(files));
+        } catch (RejectedExecutionException e) {
+            log.warn("Processing rejected for user {}: {}", session.userId, e.getMessage());
+            locked(session, s -> {
+                s.deleteFiles();
+                resetAfterProcessing(s);
+            });
+            if (callback != null) {
+                callback.onProcessingRejected(session.chatId);
+            }
+            return;
+        }
+        if (position > 0) {
+            log.info("Processing for user {} queued at position {}", session.userId, position);
+            if (callback != null) {
+                callback.onProcessingQueued(session.chatId, position);
+            }
+        }
+    }
+
+    private void process(UserSession session, List<UploadedFile> files) {
+        // Parsing, report generation and sending run without holding the session lock
+        ProcessingCallback callback = processingCallback;
+        try {
+            if (callback != null) {
+                log.debug("Process begin for user: {}", session.userId);
+                if (callback.onProcessingBegin(session.userId, session.chatId, files)) {
+                    callback.onProcessingComplete(session.chatId);
+                } else {
+                    callback.onProcessingError(session.chatId);
                 }
             }
-            log.debug("Process end for user: {}", session.userId);
-            session.lastActivity = LocalDateTime.now();
-            session.state = UserSessionState.IDLE;
-            session.maxFilesErrorMsgFlag = false;
-            session.fileCount = 0;
+        } catch (Exception e) {
+            log.error("Error during process: {}", e.getMessage());
+            if (callback != null) {
+                callback.onProcessingError(session.chatId);
+            }
+        } finally {
+            locked(session, s -> {
+                s.deleteFiles();
+                resetAfterProcessing(s);
+            });
+        }
+        log.debug("Process end for user: {}", session.userId);
+    }
+
+    private static void resetAfterProcessing(UserSession session) {
+        session.lastActivity = LocalDateTime.now();
+        session.state = UserSessionState.IDLE;
+        session.maxFilesErrorMsgFlag = false;
+        session.fileCount = 0;
     }
-}
\ No newline at end of file
+}
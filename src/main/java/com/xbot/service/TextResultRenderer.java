@@ -0,0 +1,117 @@
+package com.xbot.service;
+
+import com.xbot.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Renders a small result as a text list split into Telegram messages.
+ * <p>
+ * Lines are appended straight into a builder and cut into chunks on line boundaries, each at most
+ * {@code limit} characters; a single line longer than the limit is cut without splitting surrogate pairs.
+ */
+public class TextResultRenderer {
+
+    /** Maximum length of a Telegram message text. */
+    public static final int MESSAGE_LIMIT = 4096;
+
+    private final int limit;
+
+    public TextResultRenderer() {
+        this(MESSAGE_LIMIT);
+    }
+
+    public TextResultRenderer(int limit) {
+        if (limit < 2) {
+            throw new IllegalArgumentException("limit is too small: " + limit);
+        }
+        this.limit = limit;
+    }
+
+    public List<String> render(Set<User> participants, Set<User> mentions, Set<User> channels) {
+        Chunks chunks = new Chunks(limit);
+        StringBuilder line = new StringBuilder(128);
+
+        int totalCount = participants.size() + mentions.size() + channels.size();
+        chunks.add(line.append("👥 Найдено: ").append(totalCount).append('\n'));
+
+        appendSection(chunks, line, "\n📝 Участники (", participants, true);
+        appendSection(chunks, line, "\n💬 Упоминания (", mentions, true);
+        appendSection(chunks, line, "\n📢 Каналы (", channels, false);
+
+        return chunks.finish();
+    }
+
+    private static void appendSection(Chunks chunks, StringBuilder line, String title, Set<User> users,
+                                      boolean withLink) {
+        if (users.isEmpty()) {
+            return;
+        }
+        line.setLength(0);
+        chunks.add(line.append(title).append(users.size()).append("):\n"));
+        int counter = 1;
+        for (User user : users) {
+            line.setLength(0);
+            line.append(counter++).append(". ").append(user.fullName());
+            if (withLink) {
+                line.append(" (");
+                appendUserLink(line, user);
+                line.append(')');
+            }
+            chunks.add(line.append('\n'));
+        }
+    }
+
+    private static void appendUserLink(StringBuilder line, User user) {
+        String telegramId = user.telegramId();
+        if (telegramId == null) {
+            return;
+        }
+        if (telegramId.startsWith("user")) {
+            line.append("tg://user?id=").append(telegramId, 4, telegramId.length());
+        } else {
+            line.append('@').append(telegramId);
+        }
+    }
+
+    private static final class Chunks {
+        private final int limit;
+        private final List<String> chunks = new ArrayList<>();
+        private final StringBuilder current;
+
+        Chunks(int limit) {
+            this.limit = limit;
+            this.current = new StringBuilder(Math.min(limit, 1024));
+        }
+
+        void add(CharSequence line) {
+            if (current.length() + line.length() > limit) {
+                flush();
+            }
+            int start = 0;
+            while (line.length() - start > limit) {
+                int end = start + limit;
+                if (Character.isHighSurrogate(line.charAt(end - 1))) {
+                    end--;
+                }
+                chunks.add(line.subSequence(start, end).toString());
+                start = end;
+            }
+            current.append(line, start, line.length());
+        }
+
+        List<String> finish() {
+            flush();
+            return chunks;
+        }
+
+        private void flush() {
+            if (!current.isEmpty()) {
+                chunks.add(current.toString());
+                current.setLength(0);
+            }
+        }
+    }
+}
@@ -9,17 +9,21 @@ public final class Constants {
     // Команды
     public static final String START_CMD = "/start";
     public static final String HELP_CMD = "/help";
+    public static final String FORMAT_CMD = "/format";
     // Стандартные ответы
     public static final String UNKNOWN_MSG_ANSWER = "Неизвестная команда. Используйте /help для списка команд.";
     // Сообщения с ошибками
     public static final String ERROR_MSG_MAX_FILES = "❌ Вы уже загрузили максимальное количество файлов (%d).\n" +
             "Отправляйте файлы пачками до %d штук.";
     public static final String ERROR_MSG_MAX_FILE_SIZE = "❌ Ошибка: \nНеверный размер файла %s. Максимальный размер файла: %d Мб";
-    public static final String ERROR_MSG_WRONG_FORMAT = "❌ Ошибка: \nПоддерживаются только HTML и JSON файлы.";
+    public static final String ERROR_MSG_WRONG_FORMAT = "❌ Ошибка: \nПоддерживаются только HTML и JSON файлы, ZIP-архивы и .json.gz/.html.gz.";
     public static final String ERROR_MSG_UNKNOWN_DOWNLOAD = "❌ Не удалось загрузить файл. Попробуйте ещё раз.";
     public static final String ERROR_WAIT_FOR_PREVIOUS_REQUEST = "❌ Дождитесь окончания предыдущей обработки.";
     public static final String ERROR_PROCESS = "❌ Ошибка обработки.";
     public static final String ERROR_FILE_PROCESS = "❌ Ошибка при обработке файла: %s";
+    public static final String ERROR_UNKNOWN_FORMAT = "❌ Неизвестный формат: %s\n" +
+            "Доступные форматы: auto, xlsx, csv, tsv, csv.gz";
+    public static final String ERROR_PROCESSING_QUEUE_FULL = "❌ Сейчас слишком много запросов. Отправьте файлы ещё раз через несколько минут.";
     public static final String WARNING_USERS_LIST_EMPTY = "⚠️ Внимание! Не найдено ни одного пользователя!";
     // Сообщения
     public static final String PROGRESS_MSG_WAIT = "📥 Загрузка файлов\n⏳ Пожалуйста, подождите...";
@@ -30,16 +34,17 @@ public final class Constants {
             
             **Как использовать:**
             1. Экспортируйте историю чата из Telegram
-            2. Отправьте мне полученные файлы (HTML/JSON)
+            2. Отправьте мне полученные файлы (HTML/JSON) или ZIP-архив папки экспорта
             3. Я проанализирую файлы и создам отчет
            
             **Ограничения:**
             • Максимум %d файлов за раз
-            • Форматы: HTML, JSON
+            • Форматы: HTML, JSON, ZIP, .json.gz, .html.gz
             
             **Команды:**
             /help - полная справка
             /start - это сообщение
+            /format - формат файла с результатом
             
             Готов к работе! 🚀
             """;
@@ -48,21 +53,29 @@ public final class Constants {
             
             /start - Начальное приветствие
             /help - Эта справка
+            /format - Формат вывода: auto, xlsx, csv, tsv, csv.gz
             
             Как использовать:
             1. Экспортируйте историю чата из Telegram (Settings → Advanced → Export chat history)
             2. Отправьте полученные файлы (HTML/JSON) этому боту
+               или одним ZIP-архивом папки экспорта
             3. Получите отчет об участниках чата
             
             Формат вывода:
             • Менее 50 участников - текстовый список
             • 50+ участников - файл Excel
+            • Очень большие результаты - CSV, сжатый gzip
+            • Формат файла можно выбрать командой /format
             
             Ограничения:
             • Максимум 10 файлов за раз
-            • Форматы: HTML, JSON
+            • Форматы: HTML, JSON, ZIP, .json.gz, .html.gz
             """;
-    public static final String REQUEST_MSG = "Отправьте мне файлы экспорта чата (HTML/JSON) или используйте команды:\n/start - начать\n/help - помощь";
+    public static final String REQUEST_MSG = "Отправьте мне файлы экспорта чата (HTML/JSON/ZIP) или используйте команды:\n/start - начать\n/help - помощь";
+    public static final String FORMAT_MSG = "📄 Формат вывода: %s\n" +
+            "Изменить: /format auto | xlsx | csv | tsv | csv.gz";
+    public static final String FORMAT_AUTO = "auto (текст, Excel или CSV в gzip по размеру результата)";
+    public static final String PROCESS_QUEUED = "⏳ Запрос в очереди, место: %d. Обработка начнётся автоматически.";
     public static final String PROCESS_BEGIN="🧠 Обработка началась...";
     public static final String PROCESS_COMPLETE="✅ Запрос обработан!!!";
 }
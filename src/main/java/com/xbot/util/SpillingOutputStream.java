@@ -0,0 +1,132 @@
+package com.xbot.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Output stream that keeps written data in memory up to {@code memoryLimit} bytes and moves it
+ * to a temp file once the limit is exceeded.
+ * <p>
+ * {@link #close()} only finishes writing; the temp file, if any, is removed by {@link #delete()}.
+ */
+public class SpillingOutputStream extends OutputStream {
+
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    private final int memoryLimit;
+    private final Path directory;
+    private final String suffix;
+
+    private ExposedBuffer memory = new ExposedBuffer();
+    private File file;
+    private OutputStream fileOut;
+    private long size;
+    private boolean closed;
+
+    /**
+     * @param memoryLimit bytes kept in memory before spilling to disk
+     * @param directory   where the temp file is created
+     * @param suffix      temp file suffix, e.g. ".xlsx"
+     */
+    public SpillingOutputStream(int memoryLimit, Path directory, String suffix) {
+        this.memoryLimit = memoryLimit;
+        this.directory = directory;
+        this.suffix = suffix;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        target(1).write(b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        target(len).write(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (fileOut != null) {
+            fileOut.close();
+        }
+    }
+
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * Size of everything written so far.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Reads the in-memory data without copying it.
+     */
+    public InputStream toInputStream() {
+        if (memory == null) {
+            throw new IllegalStateException("Data was spilled to " + file);
+        }
+        return memory.toInputStream();
+    }
+
+    /**
+     * Temp file holding the data, {@code null} while it fits in memory.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Closes the stream and deletes the temp file.
+     */
+    public void delete() throws IOException {
+        close();
+        if (file != null) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private OutputStream target(int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (fileOut == null && size + length > memoryLimit) {
+            spill();
+        }
+        return fileOut != null ? fileOut : memory;
+    }
+
+    private void spill() throws IOException {
+        file = Files.createTempFile(directory, "result_", suffix).toFile();
+        fileOut = new BufferedOutputStream(new FileOutputStream(file), FILE_BUFFER_SIZE);
+        memory.writeTo(fileOut);
+        memory = null;
+    }
+
+    private static final class ExposedBuffer extends ByteArrayOutputStream {
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
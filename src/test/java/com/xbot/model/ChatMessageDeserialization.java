@@ -26,4 +26,16 @@ class ChatMessageDeserialization {
         assertTrue(m2.text() instanceof java.util.List);
         assertEquals(2, ((java.util.List<?>) m2.text()).size());
     }
+
+    @Test
+    void keepsOnlySegmentTexts() throws Exception {
+        String json = "{\"id\":3,\"type\":\"message\",\"date\":\"2025-12-12T10:00:00\",\"date_unixtime\":\"0\","
+                + "\"text\":[\"a\",{\"type\":\"text_link\",\"text\":\"b\",\"href\":\"https://t.me\",\"user_id\":5},42,"
+                + "{\"type\":\"custom_emoji\",\"document_id\":{\"nested\":[1]}}],"
+                + "\"text_entities\":[{\"type\":\"text_link\",\"text\":\"b\",\"href\":\"https://t.me\"}]}";
+        ChatMessage m = mapper.readValue(json, ChatMessage.class);
+
+        assertEquals(java.util.List.of("a", "b"), m.text(), "non-text items and segment attributes are skipped");
+        assertEquals("https://t.me", m.textEntities().get(0).href());
+    }
 }
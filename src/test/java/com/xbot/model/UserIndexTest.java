@@ -0,0 +1,177 @@
+package com.xbot.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserIndexTest {
+
+    @Test
+    void deduplicatesNumericAndStringKeysPerRole() {
+        UserIndex index = new UserIndex();
+        index.add("user123", null, "Alice", "Alice", UserIndex.PARTICIPANT);
+        index.add("user123", null, "Alice again", "Alice again", UserIndex.PARTICIPANT);
+        index.add("bob", "bob", "bob", "bob", UserIndex.MENTION);
+        index.add("News", null, "News", "News", UserIndex.CHANNEL);
+        index.add(null, null, null, null, UserIndex.PARTICIPANT);
+
+        assertEquals(4, index.size());
+        assertEquals(2, index.participants().size());
+        assertEquals(1, index.mentions().size());
+        assertEquals(1, index.channels().size());
+
+        User alice = index.user(index.find("user123"));
+        assertEquals(new User("user123", null, "Alice", "Alice"), alice);
+        assertEquals("Alice", alice.fullName(), "first occurrence wins");
+        assertTrue(index.participants().contains(new User("user123", "x")));
+        assertTrue(index.participants().contains(new User(null, null, null, null)));
+        assertFalse(index.mentions().contains(new User("user123", "x")));
+    }
+
+    @Test
+    void keepsMentionNamePerRole() {
+        UserIndex index = new UserIndex();
+        index.add("user7", null, "Ally", "Ally", UserIndex.MENTION);
+        index.add("user7", null, "Alice Smith", "Alice Smith", UserIndex.PARTICIPANT);
+        index.add("user7", null, "Al", "Al", UserIndex.MENTION);
+
+        assertEquals(1, index.size());
+        assertEquals("Ally", index.mentions().iterator().next().fullName(), "first mention, as before deduplication");
+        assertEquals("Alice Smith", index.participants().iterator().next().fullName());
+        assertEquals("Alice Smith", index.user(index.find("user7")).fullName(), "entry uses the participant name");
+    }
+
+    @Test
+    void mergedIndexKeepsNamesPerRole() {
+        UserIndex first = new UserIndex();
+        first.add("user7", null, "Ally", "Ally", UserIndex.MENTION);
+        first.add("user7", null, "Seven News", "Seven News", UserIndex.CHANNEL);
+        first.add("user7", null, "Alice Smith", "Alice Smith", UserIndex.PARTICIPANT);
+        UserIndex merged = new UserIndex();
+
+        merged.addAll(first);
+
+        assertEquals("Ally", merged.mentions().iterator().next().fullName());
+        assertEquals("Seven News", merged.channels().iterator().next().fullName());
+        assertEquals("Alice Smith", merged.participants().iterator().next().fullName());
+    }
+
+    @Test
+    void resultFindsTheIndexBehindItsSets() {
+        UserIndex index = new UserIndex();
+        index.add("user1", null, "Alice", "Alice", UserIndex.PARTICIPANT);
+
+        assertSame(index, new ExtractionResult("Chat", null, null, index).users());
+        assertNull(new ExtractionResult(index.participants(), Set.of(), Set.of()).users(),
+                "sets from different sources are not one index");
+        assertNull(new ExtractionResult(Set.of(new User("user1", "Alice")), Set.of(), Set.of()).users());
+    }
+
+    @Test
+    void roleViewsMatchSeparatePerRoleSets() {
+        UserIndex first = new UserIndex();
+        UserIndex second = new UserIndex();
+        // Baseline: one set per role, the first occurrence of a user in a role is kept
+        List<Map<String, String>> baseline = List.of(new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>());
+        int[] roles = {UserIndex.PARTICIPANT, UserIndex.MENTION, UserIndex.CHANNEL};
+        Random random = new Random(42);
+        for (int i = 0; i < 5_000; i++) {
+            UserIndex target = i < 2_500 ? first : second;
+            String id = random.nextBoolean() ? "user" + random.nextInt(300) : "name" + random.nextInt(300);
+            int role = random.nextInt(3);
+            String name = "n" + random.nextInt(4);
+            target.add(id, null, name, name + " full", roles[role]);
+            baseline.get(role).putIfAbsent(id, name + " full");
+        }
+
+        first.addAll(second);
+
+        List<Set<User>> views = List.of(first.participants(), first.mentions(), first.channels());
+        for (int role = 0; role < 3; role++) {
+            Map<String, String> actual = new HashMap<>();
+            for (User user : views.get(role)) {
+                actual.put(user.telegramId(), user.fullName());
+            }
+            assertEquals(baseline.get(role), actual, "role " + roles[role]);
+        }
+    }
+
+    @Test
+    void keepsKeysThatDoNotPrintBackAsStrings() {
+        UserIndex index = new UserIndex();
+        index.add("user0123", null, "a", "a", UserIndex.PARTICIPANT);
+        index.add("user123", null, "b", "b", UserIndex.PARTICIPANT);
+        index.add("user1234567890123456789", null, "c", "c", UserIndex.PARTICIPANT);
+
+        Set<String> ids = new HashSet<>();
+        index.participants().forEach(user -> ids.add(user.telegramId()));
+        assertEquals(Set.of("user0123", "user123", "user1234567890123456789"), ids);
+        assertEquals(123L, UserIndex.parseNumericId("user123"));
+        assertEquals(-1L, UserIndex.parseNumericId("username"));
+    }
+
+    @Test
+    void findsByCharacterBuffer() {
+        UserIndex index = new UserIndex();
+        index.add("user42", null, "Alice", "Alice", UserIndex.PARTICIPANT);
+        index.add("channel7", null, "News", "News", UserIndex.PARTICIPANT);
+        StringBuilder buffer = new StringBuilder();
+
+        buffer.append("user42");
+        assertEquals(index.find("user42"), index.find(buffer));
+        buffer.setLength(0);
+        buffer.append("channel7");
+        assertEquals(index.find("channel7"), index.find(buffer));
+        buffer.append('0');
+        assertEquals(-1, index.find(buffer));
+    }
+
+    @Test
+    void mergesActivityCounters() {
+        UserIndex first = new UserIndex();
+        first.recordMessage(first.add("user1", null, "A", "A", UserIndex.PARTICIPANT), 200);
+        first.recordMessage(first.find("user1"), 0);
+        UserIndex second = new UserIndex();
+        second.recordMessage(second.add("user1", null, "A", "A", UserIndex.PARTICIPANT), 100);
+        second.recordMention(second.add("user1", null, "A", "A", UserIndex.MENTION));
+
+        first.addAll(second);
+
+        int entry = first.find("user1");
+        assertEquals(3, first.messageCount(entry));
+        assertEquals(100, first.firstMessageTime(entry));
+        assertEquals(200, first.lastMessageTime(entry));
+        assertEquals(1, first.mentionCount(entry));
+    }
+
+    @Test
+    void growsAndMergesInOrder() {
+        UserIndex first = new UserIndex();
+        UserIndex second = new UserIndex();
+        for (int i = 0; i < 10_000; i++) {
+            first.add("user" + i, null, "first " + i, "first " + i, UserIndex.PARTICIPANT);
+            second.add("user" + (i + 5_000), null, "second " + i, "second " + i, UserIndex.PARTICIPANT);
+            second.add("name" + i, null, "n", "n", UserIndex.MENTION);
+        }
+
+        first.addAll(second);
+
+        assertEquals(15_000, first.participants().size());
+        assertEquals(10_000, first.mentions().size());
+        assertEquals("first 9999", first.user(first.find("user9999")).fullName());
+        assertEquals("second 9999", first.user(first.find("user14999")).fullName());
+
+        List<User> participants = new ArrayList<>(first.participants());
+        assertEquals("user0", participants.get(0).telegramId(), "views keep insertion order");
+        assertThrows(UnsupportedOperationException.class, () -> first.participants().add(new User("x")));
+    }
+}
@@ -0,0 +1,46 @@
+package com.xbot.parser;
+
+import com.xbot.parser.ExportFormatProbe.Format;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportFormatProbeTest {
+
+    @Test
+    void detectsJsonWithBomAndLeadingWhitespace() {
+        byte[] json = "\uFEFF\n  {\"name\":\"Chat\",\"messages\":[]}".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(Format.JSON, ExportFormatProbe.probe(json, json.length, true));
+    }
+
+    @Test
+    void rejectsJsonWithoutMessagesArray() {
+        assertEquals(Format.UNKNOWN, ExportFormatProbe.probe("{\"messages\":{}}"));
+        assertEquals(Format.UNKNOWN, ExportFormatProbe.probe("{\"name\":\"Chat\"}"));
+        assertEquals(Format.UNKNOWN, ExportFormatProbe.probe("{"));
+    }
+
+    @Test
+    void truncatedPrefixFallsBackToFirstCharacter() {
+        String longName = "x".repeat(ExportFormatProbe.PROBE_SIZE * 2);
+        String json = "{\"name\":\"" + longName + "\",\"messages\":[]}";
+        String html = "<!DOCTYPE html><html><head><style>" + longName + "</style></head>"
+                + "<body><div class=\"message default\"></div></body></html>";
+
+        assertEquals(Format.JSON, ExportFormatProbe.probe(json));
+        assertEquals(Format.HTML, ExportFormatProbe.probe(html));
+    }
+
+    @Test
+    void detectsHtmlCaseInsensitively() {
+        String html = "<!DOCTYPE html><HTML><body><div CLASS=\"message service\"></div></body></HTML>";
+
+        assertEquals(Format.HTML, ExportFormatProbe.probe(html));
+        assertEquals(Format.UNKNOWN, ExportFormatProbe.probe("<html><body>no messages</body></html>"));
+        assertEquals(Format.UNKNOWN, ExportFormatProbe.probe("not a telegram export"));
+        assertEquals(Format.UNKNOWN, ExportFormatProbe.probe("   "));
+    }
+}
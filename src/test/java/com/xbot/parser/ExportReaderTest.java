@@ -0,0 +1,157 @@
+package com.xbot.parser;
+
+import com.xbot.model.ExtractionResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readsPlainExport() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("messages.html"), loadResource("/exports/telegram-sample.html"));
+
+        assertEquals(2, ExportReader.read(file).participants().size());
+    }
+
+    @Test
+    void readsGzipExport() throws Exception {
+        Path file = tempDir.resolve("result.json.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(loadResource("/exports/telegram-sample.json").getBytes(StandardCharsets.UTF_8));
+        }
+
+        ExtractionResult expected = new JsonChatParser().parse(loadResource("/exports/telegram-sample.json"));
+        ExtractionResult result = ExportReader.read(file);
+
+        assertEquals(expected.participants(), result.participants());
+        assertEquals(expected.mentions(), result.mentions());
+        assertEquals(expected.chatName(), result.chatName());
+    }
+
+    @Test
+    void readsExportEntriesOfZipAndSkipsTheRest() throws Exception {
+        Path file = tempDir.resolve("ChatExport.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            addEntry(zip, "ChatExport/css/style.css", "body { color: red }");
+            addEntry(zip, "ChatExport/photos/photo_1.jpg", "ÿØ not really a jpeg");
+            addEntry(zip, "ChatExport/messages.html", loadResource("/exports/telegram-sample.html"));
+            addEntry(zip, "ChatExport/README.html", "<p>not an export</p>");
+            addEntry(zip, "ChatExport/messages2.html", """
+                    <html><body><div class="message default clearfix"><div class="body">
+                    <div class="from_name">Zed</div><div class="text">hi</div>
+                    </div></div></body></html>
+                    """);
+        }
+
+        ExtractionResult result = ExportReader.read(file);
+
+        assertEquals(3, result.participants().size(), "Alice and Bob from messages.html, Zed from messages2.html");
+        assertTrue(result.participants().stream().anyMatch(u -> "Zed".equals(u.name())));
+        assertEquals(2, result.mentions().size());
+    }
+
+    @Test
+    void stopsAtUnpackedSizeLimit() throws Exception {
+        String export = loadResource("/exports/telegram-sample.json");
+        Path gzip = tempDir.resolve("result.json.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            out.write(export.getBytes(StandardCharsets.UTF_8));
+        }
+        Path zip = tempDir.resolve("bomb.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            // Skipped entries count as well
+            addEntry(out, "ChatExport/padding.bin", "0".repeat(1024 * 1024));
+            addEntry(out, "ChatExport/result.json", export);
+        }
+
+        assertNotNull(ExportReader.read(gzip, export.length(), 10));
+        ParserException e = assertThrows(ParserException.class, () -> ExportReader.read(gzip, export.length() / 2, 10));
+        assertTrue(e.getMessage().contains("unpacks to more than"), e.getMessage());
+        assertThrows(ParserException.class, () -> ExportReader.read(zip, 512 * 1024, 10));
+        assertNotNull(ExportReader.read(zip, 2 * 1024 * 1024, 10));
+    }
+
+    @Test
+    void countsTheRestOfMisnamedAndParsedEntries() throws Exception {
+        String export = loadResource("/exports/telegram-sample.json");
+        Path misnamed = tempDir.resolve("misnamed.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(misnamed))) {
+            // Not an export, but named like one: the probe fails on the first bytes
+            addEntry(out, "ChatExport/messages.html", "junk" + "\0".repeat(4 * 1024 * 1024));
+            addEntry(out, "ChatExport/result.json", export);
+        }
+        Path trailing = tempDir.resolve("trailing.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(trailing))) {
+            // The parser stops at the closing brace, the padding after it still unpacks
+            addEntry(out, "ChatExport/result.json", export + " ".repeat(4 * 1024 * 1024));
+        }
+
+        ParserException e = assertThrows(ParserException.class, () -> ExportReader.read(misnamed, 1024 * 1024, 10));
+        assertTrue(e.getMessage().contains("unpacks to more than"), e.getMessage());
+        e = assertThrows(ParserException.class, () -> ExportReader.read(trailing, 1024 * 1024, 10));
+        assertTrue(e.getMessage().contains("unpacks to more than"), e.getMessage());
+        assertNotNull(ExportReader.read(misnamed, 8 * 1024 * 1024, 10));
+    }
+
+    @Test
+    void stopsAtEntryLimit() throws Exception {
+        Path file = tempDir.resolve("many.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            for (int i = 0; i < 5; i++) {
+                addEntry(zip, "ChatExport/photos/photo_" + i + ".jpg", "jpeg");
+            }
+            addEntry(zip, "ChatExport/messages.html", loadResource("/exports/telegram-sample.html"));
+        }
+
+        assertEquals(2, ExportReader.read(file, 1024 * 1024, 6).participants().size());
+        ParserException e = assertThrows(ParserException.class, () -> ExportReader.read(file, 1024 * 1024, 5));
+        assertTrue(e.getMessage().contains("more than 5 entries"), e.getMessage());
+    }
+
+    @Test
+    void zipWithoutExportFails() throws Exception {
+        Path file = tempDir.resolve("photos.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            addEntry(zip, "photo.jpg", "jpeg");
+        }
+
+        assertThrows(ParserException.class, () -> ExportReader.read(file));
+    }
+
+    @Test
+    void parserForStreamLeavesStreamAtStart() {
+        byte[] html = "<html><body><div class=\"message default\"></div></body></html>".getBytes(StandardCharsets.UTF_8);
+        var in = new ByteArrayInputStream(html);
+
+        assertInstanceOf(HtmlChatParser.class, ParserFactory.getParser(in, "messages.html"));
+        assertEquals('<', in.read());
+    }
+
+    private static void addEntry(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private static String loadResource(String path) throws Exception {
+        try (var in = ExportReaderTest.class.getResourceAsStream(path)) {
+            assertNotNull(in, "resource not found: " + path);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -1,9 +1,19 @@
 package com.xbot.parser;
 
 import com.xbot.model.ExtractionResult;
+import com.xbot.model.User;
+import com.xbot.model.UserIndex;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -35,6 +45,124 @@ class HtmlChatParserTest {
         assertTrue(result.mentions().stream().anyMatch(u -> "carol".equals(u.name())));
     }
 
+    @Test
+    void parsesFromInputStream() throws Exception {
+        try (InputStream in = HtmlChatParserTest.class.getResourceAsStream("/exports/telegram-sample.html")) {
+            assertNotNull(in);
+            ExtractionResult result = parser.parse(in);
+
+            assertEquals(2, result.participants().size());
+            assertEquals(2, result.mentions().size());
+        }
+        assertThrows(ParserException.class, () -> parser.parse(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    void readsForwardedNameWithoutDateAndSkipsDeletedAccounts() throws Exception {
+        String html = """
+                <html><body><div class="history">
+                <div class="message default clearfix" id="message1"><div class="body">
+                  <div class="forwarded body">
+                    <div class="from_name">  Tom &amp;\n <b>Jerry</b> <span class="date details">01.01.2024 10:00</span></div>
+                    <div class="text">hi <span><a href="tg://user?id=42">Dave</a></span> <a href="https://t.me/c/1/2">x</a></div>
+                  </div>
+                </div></div>
+                <div class="message default clearfix" id="message2"><div class="body">
+                  <div class="from_name">DELETED Account</div>
+                  <div class="text"><a href="https://t.me/eve">@eve</a></div>
+                </div></div>
+                <div class="message default clearfix" id="message3"><div class="body">
+                  <div class="from_name">Удалённый аккаунт</div>
+                </div></div>
+                </div></body></html>
+                """;
+
+        ExtractionResult result = parser.parse(html);
+
+        assertEquals(1, result.participants().size());
+        assertEquals("Tom & Jerry", result.participants().iterator().next().name());
+        assertEquals(1, result.mentions().size(), "only the text mention of the first message");
+        assertEquals("user42", result.mentions().iterator().next().telegramId());
+        assertEquals("Dave", result.mentions().iterator().next().name());
+    }
+
+    @Test
+    void countsMessagesIncludingJoinedOnes() {
+        String html = """
+                <html><body><div class="history">
+                <div class="message default clearfix" id="message1"><div class="body">
+                  <div class="pull_right date details" title="01.02.2024 10:00:00 UTC+03:00">10:00</div>
+                  <div class="from_name">Alice</div>
+                  <div class="text">hi <a href="https://t.me/bob">@bob</a></div>
+                </div></div>
+                <div class="message default clearfix joined" id="message2"><div class="body">
+                  <div class="pull_right date details" title="01.02.2024 10:05:00 UTC+03:00">10:05</div>
+                  <div class="text">again <a href="https://t.me/bob">@bob</a></div>
+                </div></div>
+                <div class="message service" id="message3"><div class="body details">Bob joined</div></div>
+                <div class="message default clearfix joined" id="message4"><div class="body">
+                  <div class="text">orphan</div>
+                </div></div>
+                </div></body></html>
+                """;
+
+        ExtractionResult result = parser.parse(html);
+        UserIndex users = result.users();
+
+        int alice = users.find("Alice");
+        assertEquals(2, users.messageCount(alice));
+        assertEquals(Instant.parse("2024-02-01T07:00:00Z").getEpochSecond(), users.firstMessageTime(alice));
+        assertEquals(Instant.parse("2024-02-01T07:05:00Z").getEpochSecond(), users.lastMessageTime(alice));
+        assertEquals(2, users.mentionCount(users.find("bob")));
+        assertEquals(1, result.participants().size());
+    }
+
+    @Test
+    void extractsMentionsFromJoinedMessage() {
+        String html = """
+                <html><body><div class="history">
+                <div class="message default clearfix" id="message1"><div class="body">
+                  <div class="from_name">Alice</div>
+                  <div class="text">hello</div>
+                </div></div>
+                <div class="message default clearfix joined" id="message2"><div class="body">
+                  <div class="text">ping <a href="https://t.me/carol">@carol</a></div>
+                </div></div>
+                </div></body></html>
+                """;
+
+        UserIndex users = parser.parse(html).users();
+
+        int carol = users.find("carol");
+        assertTrue(carol >= 0, "mention in a joined message is extracted");
+        assertEquals(1, users.mentionCount(carol));
+        assertEquals(2, users.messageCount(users.find("Alice")));
+    }
+
+    @Test
+    void countsMentionsOfJoinedMessagesLikeJsonExport() throws Exception {
+        // The same chat in both formats: the second message is joined to Alice's first one in HTML
+        ExtractionResult html = parser.parse(loadResource("/exports/telegram-joined.html"));
+        ExtractionResult json = new JsonChatParser().parse(loadResource("/exports/telegram-joined.json"));
+
+        assertEquals(List.of("Alice"), html.participants().stream().map(User::name).toList());
+        assertEquals(Set.of("bob_user", "carol"), html.mentions().stream().map(User::name).collect(Collectors.toSet()),
+                "the mention of the joined message is counted");
+        assertEquals(json.mentions().stream().map(User::name).collect(Collectors.toSet()),
+                html.mentions().stream().map(User::name).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void parsesDateTitleArithmetically() {
+        assertEquals(OffsetDateTime.of(2023, 12, 31, 23, 59, 58, 0, ZoneOffset.ofHours(3)).toEpochSecond(),
+                HtmlChatParser.parseDateTitle("31.12.2023 23:59:58 UTC+03:00"));
+        assertEquals(OffsetDateTime.of(2024, 2, 29, 0, 0, 0, 0, ZoneOffset.ofHoursMinutes(-5, -30)).toEpochSecond(),
+                HtmlChatParser.parseDateTitle("29.02.2024 00:00:00 UTC-05:30"));
+        assertEquals(OffsetDateTime.of(2020, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC).toEpochSecond(),
+                HtmlChatParser.parseDateTitle("01.01.2020 12:00:00"));
+        assertEquals(0L, HtmlChatParser.parseDateTitle("yesterday"));
+    }
+
     @Test
     void exceptionOnEmptyContent() {
         assertThrows(ParserException.class, () -> parser.parse("\n\t "));
@@ -0,0 +1,58 @@
+package com.xbot.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlMessageSplitterTest {
+
+    @Test
+    void returnsOneMessageElementAtATime() throws Exception {
+        String html = "<!DOCTYPE html><html><head>"
+                + "<style>p::after { content: \"<div class='message x'>\"; }</style>"
+                + "<script>var s = '<div class=\"message\">';</script></head>"
+                + "<body><div class=\"history\">"
+                + "<!-- <div class=\"message default\"> -->"
+                + "<div class=\"message default clearfix\" id=\"m1\"><div class=\"body\"><div class=\"from_name\">Alice</div>"
+                + "<div class=\"text\" title='a > b'>Hi</div></div></div>"
+                + "<div class=\"messages_list\"></div>"
+                + "<div class=\"message service\" id=\"m2\"><br/><div class=\"body details\">Today</div></div>"
+                + "</div></body></html>";
+
+        HtmlMessageSplitter splitter = new HtmlMessageSplitter(new StringReader(html));
+
+        String first = splitter.next();
+        assertTrue(first.startsWith("<div class=\"message default clearfix\" id=\"m1\">"));
+        assertTrue(first.endsWith("<div class=\"text\" title='a > b'>Hi</div></div></div>"));
+
+        String second = splitter.next();
+        assertEquals("<div class=\"message service\" id=\"m2\"><br/><div class=\"body details\">Today</div></div>", second);
+
+        assertNull(splitter.next());
+        assertTrue(splitter.sawContent());
+    }
+
+    @Test
+    void matchesTagNamesAndClassTokensIgnoringCase() throws Exception {
+        String html = "<divider class=\"message\">not a div</divider>"
+                + "<div class=\"messages default\">no message token</div>"
+                + "<DIV CLASS='clearfix\tMessage  default' id=m1><Div>x</DIV></div>"
+                + "<div class=message id=m2></div>";
+
+        HtmlMessageSplitter splitter = new HtmlMessageSplitter(new StringReader(html));
+
+        assertEquals("<DIV CLASS='clearfix\tMessage  default' id=m1><Div>x</DIV></div>", splitter.next());
+        assertEquals("<div class=message id=m2></div>", splitter.next());
+        assertNull(splitter.next());
+    }
+
+    @Test
+    void reportsEmptyInput() throws Exception {
+        HtmlMessageSplitter splitter = new HtmlMessageSplitter(new StringReader(" \n\t"));
+
+        assertNull(splitter.next());
+        assertFalse(splitter.sawContent());
+    }
+}
@@ -1,8 +1,11 @@
 package com.xbot.parser;
 
 import com.xbot.model.ExtractionResult;
+import com.xbot.model.UserIndex;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -39,6 +42,68 @@ class JsonChatParserTest {
         assertTrue(result.channels().stream().anyMatch(u -> "Channel Admin".equals(u.name())));
     }
 
+    @Test
+    void skipsUnusedFieldsAndReadsChatMetadata() {
+        String json = "{\"name\":\"Chat\",\"type\":\"private_group\",\"id\":7,"
+                + "\"personal_information\":{\"first_name\":\"x\",\"nested\":[1,2,{\"from\":\"Ghost\"}]},"
+                + "\"messages\":[42,"
+                + "{\"poll\":{\"answers\":[{\"text\":\"a\"}]},\"from\":\"Alice\",\"from_id\":\"user1\","
+                + "\"text\":[\"hi \",{\"type\":\"mention\",\"text\":\"@ghost\"}],"
+                + "\"text_entities\":[{\"type\":\"mention\",\"text\":\"@bob\"},"
+                + "{\"type\":\"text_link\",\"text\":\"Carol\",\"href\":\"tg://user?id=5\"}]}]}";
+
+        ExtractionResult result = parser.parse(json);
+
+        assertEquals("Chat", result.chatName());
+        assertEquals("private_group", result.chatType());
+        assertEquals(7L, result.chatId());
+        assertEquals(1, result.participants().size());
+        assertEquals(2, result.mentions().size());
+        assertTrue(result.mentions().stream().anyMatch(u -> "user5".equals(u.telegramId())));
+        assertTrue(result.mentions().stream().noneMatch(u -> "ghost".equals(u.telegramId())));
+    }
+
+    @Test
+    void parsesFromInputStream() throws Exception {
+        try (InputStream in = JsonChatParserTest.class.getResourceAsStream("/exports/telegram-sample.json")) {
+            assertNotNull(in);
+            ExtractionResult result = parser.parse(in);
+
+            assertEquals(2, result.participants().size());
+            assertEquals(3, result.mentions().size());
+            assertEquals(1, result.channels().size());
+        }
+        assertThrows(ParserException.class, () -> parser.parse(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    void countsActivityPerUser() {
+        String json = """
+                {"messages": [
+                  {"from": "Alice", "from_id": "user1", "date_unixtime": "1704090060", "text_entities": [
+                    {"type": "mention", "text": "@bob"}]},
+                  {"from": "Alice", "from_id": "user1", "date_unixtime": "1704090000", "text_entities": [
+                    {"type": "mention", "text": "@bob"}, {"type": "text_link", "text": "Alice", "href": "tg://user?id=1"}]},
+                  {"from": "Alice", "from_id": "user1", "date_unixtime": "1704093600"},
+                  {"from": "Carol", "from_id": "user3"}
+                ]}
+                """;
+
+        UserIndex users = parser.parse(json).users();
+
+        int alice = users.find("user1");
+        assertEquals(3, users.messageCount(alice));
+        assertEquals(1704090000L, users.firstMessageTime(alice));
+        assertEquals(1704093600L, users.lastMessageTime(alice));
+        assertEquals(1, users.mentionCount(alice));
+        assertEquals(2, users.mentionCount(users.find("bob")));
+        assertEquals(0, users.messageCount(users.find("bob")));
+
+        int carol = users.find("user3");
+        assertEquals(1, users.messageCount(carol));
+        assertEquals(0L, users.firstMessageTime(carol), "no date_unixtime");
+    }
+
     @Test
     void exceptionOnEmptyContent() {
         ParserException ex = assertThrows(ParserException.class, () -> parser.parse(" "));
@@ -0,0 +1,62 @@
+package com.xbot.parser;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageProjectionReaderTest {
+
+    @Test
+    void readsOnlyExtractionFields() throws Exception {
+        String json = "[{\"id\":1,\"date\":\"2025-12-12T10:00:00\",\"from\":\"Alice\",\"from_id\":\"user1\","
+                + "\"photo\":\"p.jpg\",\"text\":[\"a\",{\"type\":\"bold\",\"text\":\"b\"}],"
+                + "\"text_entities\":[{\"type\":\"plain\",\"text\":\"a\"},{\"type\":\"mention\",\"text\":\"@bob\"},"
+                + "{\"type\":\"text_link\",\"text\":\"Carol\",\"href\":\"tg://user?id=5\"}]},"
+                + "\"not an object\","
+                + "{\"type\":\"service\",\"actor\":\"Admin\",\"action\":\"migrate_from_channel\"}]";
+
+        try (JsonParser parser = new JsonFactory().createParser(json)) {
+            assertEquals(JsonToken.START_ARRAY, parser.nextToken());
+            MessageProjectionReader reader = new MessageProjectionReader(parser);
+
+            assertTrue(reader.advance());
+            assertEquals("Alice", reader.from().toString());
+            assertEquals("user1", reader.fromId().toString());
+            assertEquals(2, reader.textEntities().size(), "plain entities are dropped");
+            assertFalse(reader.isChannelAction());
+
+            assertTrue(reader.advance(), "non-object elements are skipped");
+            assertNull(reader.from());
+            assertEquals("Admin", reader.actor());
+            assertTrue(reader.isChannelAction());
+            assertTrue(reader.textEntities().isEmpty());
+
+            assertFalse(reader.advance());
+        }
+    }
+
+    @Test
+    void advanceExposesSenderBuffersWithoutStrings() throws Exception {
+        String json = "[{\"from\":\"Al\\u0069ce\",\"from_id\":\"user1\"},{\"from\":null},{\"from\":\"Bob\"}]";
+
+        try (JsonParser parser = new JsonFactory().createParser(json)) {
+            parser.nextToken();
+            MessageProjectionReader reader = new MessageProjectionReader(parser);
+
+            assertTrue(reader.advance());
+            assertEquals("Alice", reader.from().toString());
+            assertEquals("user1", reader.fromId().toString());
+
+            assertTrue(reader.advance());
+            assertNull(reader.from());
+            assertNull(reader.fromId(), "fields of the previous message are reset");
+
+            assertTrue(reader.advance());
+            assertEquals("Bob", reader.from().toString());
+            assertFalse(reader.advance());
+        }
+    }
+}
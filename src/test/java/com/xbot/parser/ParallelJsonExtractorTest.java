@@ -0,0 +1,97 @@
+package com.xbot.parser;
+
+import com.xbot.model.ExtractionResult;
+import com.xbot.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelJsonExtractorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void parallelParseMatchesSequentialParse() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("result.json"), buildExport(2_000));
+
+        ExtractionResult sequential = new JsonChatParser().parse(Files.readString(file));
+        ExtractionResult parallel = new JsonChatParser(new ForkJoinPool(4), 0, 512).parse(file);
+
+        assertEquals("Big \"chat\" {", parallel.chatName());
+        assertEquals(sequential.chatType(), parallel.chatType());
+        assertEquals(42L, parallel.chatId());
+        assertSameUsers(sequential.participants(), parallel.participants());
+        assertSameUsers(sequential.mentions(), parallel.mentions());
+        assertSameUsers(sequential.channels(), parallel.channels());
+        assertEquals(50, parallel.participants().size());
+        assertEquals(30, parallel.mentions().size());
+        assertEquals(1, parallel.channels().size());
+    }
+
+    @Test
+    void mergesChunksAsTheyCompleteWithFewThreads() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("result.json"), buildExport(2_000));
+
+        ExtractionResult sequential = new JsonChatParser().parse(Files.readString(file));
+        // Many more chunks than threads: older chunks are merged before new ones are submitted
+        ExtractionResult parallel = new JsonChatParser(new ForkJoinPool(2), 0, 64).parse(file);
+        Files.delete(file);
+
+        assertSameUsers(sequential.participants(), parallel.participants());
+        assertSameUsers(sequential.mentions(), parallel.mentions());
+        assertEquals(42L, parallel.chatId());
+    }
+
+    @Test
+    void fallsBackWhenMessagesIsNotAnArray() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("odd.json"), "{\"name\":\"x\",\"messages\":{}}");
+
+        ExtractionResult result = new JsonChatParser(new ForkJoinPool(2), 0, 16).parse(file);
+
+        assertTrue(result.participants().isEmpty());
+    }
+
+    private static void assertSameUsers(Set<User> expected, Set<User> actual) {
+        Map<String, User> byId = actual.stream().collect(Collectors.toMap(User::telegramId, Function.identity()));
+        assertEquals(expected.size(), actual.size());
+        for (User user : expected) {
+            User other = byId.get(user.telegramId());
+            assertNotNull(other, "missing " + user.telegramId());
+            assertEquals(user.fullName(), other.fullName(), "first occurrence must win");
+        }
+    }
+
+    private static String buildExport(int messageCount) {
+        StringBuilder sb = new StringBuilder("{\"name\":\"Big \\\"chat\\\" {\",\"type\":\"public_supergroup\",\"messages\":[\n");
+        for (int i = 0; i < messageCount; i++) {
+            if (i > 0) {
+                sb.append(",\n");
+            }
+            if (i % 97 == 0) {
+                sb.append("\"not an object ] }\",");
+            }
+            int sender = i % 50;
+            sb.append("{\"id\":").append(i)
+                    .append(",\"from\":\"User ").append(sender).append(" #").append(i).append("\"")
+                    .append(",\"from_id\":\"user").append(sender).append("\"")
+                    .append(",\"text\":[\"tricky } ] \\\\\\\" {[ \",{\"type\":\"bold\",\"text\":\"x\"}]")
+                    .append(",\"text_entities\":[{\"type\":\"mention\",\"text\":\"@nick").append(i % 30).append("\"}]");
+            if (i == 1_000) {
+                sb.append(",\"actor\":\"Admin\",\"action\":\"create_channel\"");
+            }
+            sb.append("}");
+        }
+        sb.append("\n],\"id\":42}");
+        return sb.toString();
+    }
+}
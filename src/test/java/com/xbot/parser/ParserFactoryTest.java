@@ -1,13 +1,19 @@
 package com.xbot.parser;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class ParserFactoryTest {
 
+    @TempDir
+    Path tempDir;
+
     @Test
     void getParseReturnsJsonParser() throws Exception {
         String json = loadResource("/exports/telegram-sample.json");
@@ -24,6 +30,20 @@ class ParserFactoryTest {
         assertInstanceOf(HtmlChatParser.class, parser);
     }
 
+    @Test
+    void getParserForFileSniffsContent() throws Exception {
+        Path json = Files.writeString(tempDir.resolve("result.json"), loadResource("/exports/telegram-sample.json"));
+        Path html = Files.writeString(tempDir.resolve("messages.html"), loadResource("/exports/telegram-sample.html"));
+        Path misnamed = Files.writeString(tempDir.resolve("export.json"), loadResource("/exports/telegram-sample.html"));
+        Path empty = Files.writeString(tempDir.resolve("empty.json"), "");
+
+        assertInstanceOf(JsonChatParser.class, ParserFactory.getParser(json));
+        assertInstanceOf(HtmlChatParser.class, ParserFactory.getParser(html));
+        assertInstanceOf(HtmlChatParser.class, ParserFactory.getParser(misnamed));
+        assertThrows(ParserException.class, () -> ParserFactory.getParser(empty));
+        assertEquals(2, ParserFactory.getParser(html).parse(html).participants().size());
+    }
+
     @Test
     void getParserExceptionForEmptyContent() {
         assertThrows(ParserException.class, () -> ParserFactory.getParser("  "));
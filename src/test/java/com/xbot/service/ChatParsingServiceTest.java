@@ -0,0 +1,204 @@
+package com.xbot.service;
+
+import com.xbot.exception.FileParseException;
+import com.xbot.model.ExtractionResult;
+import com.xbot.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatParsingServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ChatParsingService service = new ChatParsingService(3);
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void parsesFilesConcurrentlyAndMergesInFileOrder() throws Exception {
+        Path first = Files.writeString(tempDir.resolve("messages.html"), htmlExport("Alice", "Bob"));
+        Path second = Files.writeString(tempDir.resolve("messages2.html"), htmlExport("Bob", "Carol"));
+        Path third = Files.writeString(tempDir.resolve("result.json"), """
+                {"name": "Team chat", "type": "private_group", "id": 7,
+                 "messages": [{"id": 1, "type": "message", "from": "Dave", "from_id": "user4", "text": "hi"}]}
+                """);
+
+        ExtractionResult result = service.parseAll(List.of(first, second, third));
+
+        assertEquals("Team chat", result.chatName());
+        assertEquals(7L, result.chatId());
+        Set<User> participants = result.participants();
+        assertEquals(4, participants.size());
+        assertTrue(participants.contains(new User("Carol")));
+        assertTrue(participants.contains(new User("user4", "Dave")));
+    }
+
+    @Test
+    void reportsTheFileThatFailed() throws Exception {
+        Path good = Files.writeString(tempDir.resolve("messages.html"), htmlExport("Alice"));
+        Path bad = Files.writeString(tempDir.resolve("messages2.html"), "not an export");
+
+        FileParseException e = assertThrows(FileParseException.class, () -> service.parseAll(List.of(good, bad)));
+        assertEquals(bad, e.getFile());
+    }
+
+    @Test
+    void collectsParsesStartedOnArrival() throws Exception {
+        Path first = Files.writeString(tempDir.resolve("messages.html"), htmlExport("Alice"));
+        Future<ExtractionResult> early = service.submit(first);
+        early.get();
+        Path second = Files.writeString(tempDir.resolve("messages2.html"), htmlExport("Bob"));
+
+        ExtractionResult result = service.collect(List.of(first, second), List.of(early, service.submit(second)));
+
+        assertEquals(Set.of(new User("Alice"), new User("Bob")), result.participants());
+    }
+
+    @Test
+    void parsesWithinTheHeapBudget() throws Exception {
+        // Budget 100: two parses of 60 do not fit together, a small one fits next to either
+        ProcessingScheduler scheduler = new ProcessingScheduler(3, 10, 100);
+        Map<String, CountDownLatch> releases = new ConcurrentHashMap<>();
+        List<String> started = new CopyOnWriteArrayList<>();
+        ChatParsingService budgeted = new ChatParsingService(scheduler, file -> {
+            String name = file.getFileName().toString();
+            started.add(name);
+            await(releases.computeIfAbsent(name, n -> new CountDownLatch(1)));
+            return new ExtractionResult(Set.of(new User(name)), Set.of(), Set.of());
+        });
+        try {
+            Future<ExtractionResult> first = budgeted.submit(1L, Path.of("first.html"), 60);
+            Future<ExtractionResult> second = budgeted.submit(1L, Path.of("second.html"), 60);
+            Future<ExtractionResult> small = budgeted.submit(1L, Path.of("small.html"), 10);
+            waitUntil(() -> started.size() == 2);
+            assertEquals(Set.of("first.html", "small.html"), Set.copyOf(started));
+            assertEquals(70, scheduler.reservedHeap());
+
+            release(releases, "first.html");
+            assertEquals(Set.of(new User("first.html")), first.get(5, TimeUnit.SECONDS).participants());
+            waitUntil(() -> started.size() == 3);
+            assertEquals("second.html", started.get(2), "starts once the first parse has freed its heap");
+
+            release(releases, "second.html");
+            release(releases, "small.html");
+            second.get(5, TimeUnit.SECONDS);
+            small.get(5, TimeUnit.SECONDS);
+            waitUntil(() -> scheduler.reservedHeap() == 0);
+        } finally {
+            releases.values().forEach(CountDownLatch::countDown);
+            budgeted.shutdown();
+        }
+    }
+
+    @Test
+    void startsLightUsersParseBeforeQueuedParsesOfHeavyUser() throws Exception {
+        ProcessingScheduler scheduler = new ProcessingScheduler(1, 10, 1000);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> started = new CopyOnWriteArrayList<>();
+        ChatParsingService fair = new ChatParsingService(scheduler, file -> {
+            String name = file.getFileName().toString();
+            started.add(name);
+            if (name.equals("heavy1.html")) {
+                await(release);
+            }
+            return new ExtractionResult(Set.of(), Set.of(), Set.of());
+        });
+        try {
+            fair.submit(1L, Path.of("heavy1.html"), 200);
+            fair.submit(1L, Path.of("heavy2.html"), 200);
+            fair.submit(1L, Path.of("heavy3.html"), 200);
+            Future<ExtractionResult> light = fair.submit(2L, Path.of("light.html"), 50);
+            waitUntil(() -> started.size() == 1);
+
+            release.countDown();
+            light.get(5, TimeUnit.SECONDS);
+            waitUntil(() -> started.size() == 4);
+            assertEquals(List.of("heavy1.html", "light.html", "heavy2.html", "heavy3.html"), started);
+        } finally {
+            release.countDown();
+            fair.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsParsesBeyondQueueCapacity() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ChatParsingService bounded = new ChatParsingService(new ProcessingScheduler(1, 1, 1000), file -> {
+            await(release);
+            return new ExtractionResult(Set.of(), Set.of(), Set.of());
+        });
+        try {
+            Future<ExtractionResult> running = bounded.submit(1L, Path.of("first.html"), 10);
+            Future<ExtractionResult> queued = bounded.submit(2L, Path.of("second.html"), 10);
+            assertThrows(RejectedExecutionException.class, () -> bounded.submit(3L, Path.of("third.html"), 10));
+
+            release.countDown();
+            running.get(5, TimeUnit.SECONDS);
+            queued.get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            bounded.shutdown();
+        }
+    }
+
+    @Test
+    void mergeKeepsFirstOccurrence() {
+        ExtractionResult first = new ExtractionResult(Set.of(new User("user1", "Old name")), Set.of(), Set.of());
+        ExtractionResult second = new ExtractionResult("Chat", Set.of(new User("user1", "New name")), Set.of(), Set.of());
+
+        ExtractionResult merged = ExtractionResult.merge(List.of(first, second));
+
+        assertEquals("Chat", merged.chatName());
+        assertEquals("Old name", merged.participants().iterator().next().name());
+    }
+
+    private static void release(Map<String, CountDownLatch> releases, String name) {
+        releases.computeIfAbsent(name, n -> new CountDownLatch(1)).countDown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached in time");
+            Thread.sleep(5);
+        }
+    }
+
+    private static String htmlExport(String... senders) {
+        StringBuilder html = new StringBuilder("<html><body><div class=\"history\">");
+        for (String sender : senders) {
+            html.append("<div class=\"message default clearfix\"><div class=\"body\">")
+                    .append("<div class=\"from_name\">").append(sender).append("</div>")
+                    .append("<div class=\"text\">hello</div></div></div>");
+        }
+        return html.append("</div></body></html>").toString();
+    }
+}
@@ -0,0 +1,33 @@
+package com.xbot.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnWidthsTest {
+
+    @Test
+    void estimatesDisplayWidth() {
+        assertEquals(5f, ColumnWidths.displayWidth("Alice"), 0.001);
+        assertEquals(4 * 1.15f, ColumnWidths.displayWidth("Иван"), 0.001);
+        assertEquals(2f, ColumnWidths.displayWidth("😀"), 0.001, "emoji as one wide char");
+        assertEquals(2f, ColumnWidths.displayWidth("❤️"), 0.001, "variation selector has no width");
+        assertEquals(4f, ColumnWidths.displayWidth("中文"), 0.001);
+        assertEquals(0f, ColumnWidths.displayWidth(""), 0.001);
+    }
+
+    @Test
+    void keepsWidestValuePerColumn() {
+        ColumnWidths widths = new ColumnWidths(3);
+        widths.track(0, "ab");
+        widths.track(0, "abcd");
+        widths.track(0, "a");
+        widths.track(1, null);
+        widths.trackNumber(2, 12345);
+        widths.trackNumber(2, 9);
+
+        assertEquals(4f, widths.width(0), 0.001);
+        assertEquals(0f, widths.width(1), 0.001);
+        assertEquals(5f, widths.width(2), 0.001);
+    }
+}
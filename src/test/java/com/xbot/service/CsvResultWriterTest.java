@@ -0,0 +1,108 @@
+package com.xbot.service;
+
+import com.xbot.model.ExtractionResult;
+import com.xbot.model.User;
+import com.xbot.model.UserIndex;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvResultWriterTest {
+
+    @Test
+    void writesOneQuotedTableForAllSections() throws Exception {
+        Set<User> participants = new LinkedHashSet<>(List.of(
+                new User("user1", null, "Иванов, Иван", "Иванов, Иван"),
+                new User("user2", null, "Tom \"Cat\"", "Tom \"Cat\"")));
+        Set<User> mentions = Set.of(new User("bob", "bob", "Bob", "Bob"));
+
+        List<String> lines = write(new CsvResultWriter(',', false),
+                new ExtractionResult(participants, mentions, Set.of()), false);
+
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).startsWith("\uFEFFРаздел,№,Telegram ID,Имя и фамилия,Ссылка на профиль,Дата экспорта"));
+        assertTrue(lines.get(1).startsWith("Участники,1,user1,\"Иванов, Иван\",tg://user?id=1,"));
+        assertTrue(lines.get(2).startsWith("Участники,2,user2,\"Tom \"\"Cat\"\"\",tg://user?id=2,"));
+        assertTrue(lines.get(3).startsWith("Упоминания,1,bob,Bob,https://t.me/bob,"));
+    }
+
+    @Test
+    void writesTsvWithActivityAndGzip() throws Exception {
+        UserIndex users = new UserIndex();
+        int alice = users.add("user1", null, "Alice\tA", "Alice\tA", UserIndex.PARTICIPANT);
+        users.recordMessage(alice, 1704090000L);
+        users.recordMention(users.add("carol", "carol", "carol", "carol", UserIndex.MENTION));
+
+        List<String> lines = write(new CsvResultWriter('\t', true),
+                new ExtractionResult(null, null, null, users), true);
+
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).endsWith("\tСообщений\tПервое сообщение (UTC)\tПоследнее сообщение (UTC)\tУпоминаний"));
+        String[] alicesRow = lines.get(1).split("\t", -1);
+        assertEquals("Alice A", alicesRow[3]);
+        assertEquals("1", alicesRow[6]);
+        assertEquals("2024-01-01 06:20:00", alicesRow[7]);
+        assertEquals("2024-01-01 06:20:00", alicesRow[8]);
+        assertEquals("0", alicesRow[9]);
+        String[] carolsRow = lines.get(2).split("\t", -1);
+        assertEquals("", carolsRow[7], "no messages");
+        assertEquals("1", carolsRow[9]);
+    }
+
+    @Test
+    void keepsFormulaLikeNamesAsText() throws Exception {
+        Set<User> participants = new LinkedHashSet<>(List.of(
+                new User("user1", null, "=HYPERLINK(\"http://evil\",\"x\")", "=HYPERLINK(\"http://evil\",\"x\")"),
+                new User("user2", null, "+7 999", "+7 999"),
+                new User("user3", null, "-1+2", "-1+2"),
+                new User("user4", null, "@SUM(A1)", "@SUM(A1)"),
+                new User("user5", null, "Anna = Bob", "Anna = Bob")));
+
+        List<String> csv = write(new CsvResultWriter(',', false),
+                new ExtractionResult(participants, Set.of(), Set.of()), false);
+        assertTrue(csv.get(1).startsWith("Участники,1,user1,\"'=HYPERLINK(\"\"http://evil\"\",\"\"x\"\")\","));
+        assertTrue(csv.get(2).startsWith("Участники,2,user2,'+7 999,"));
+        assertTrue(csv.get(3).startsWith("Участники,3,user3,'-1+2,"));
+        assertTrue(csv.get(4).startsWith("Участники,4,user4,'@SUM(A1),"));
+        assertTrue(csv.get(5).startsWith("Участники,5,user5,Anna = Bob,"), "only the first character matters");
+
+        Set<User> tabbed = Set.of(new User("user6", null, "\t=1+1", "\t=1+1"));
+        List<String> tsv = write(new CsvResultWriter('\t', false),
+                new ExtractionResult(tabbed, Set.of(), Set.of()), false);
+        assertEquals("' =1+1", tsv.get(1).split("\t", -1)[3]);
+    }
+
+    @Test
+    void choosesFormatByPreferenceOrSize() {
+        ResultWriters writers = new ResultWriters(new ExcelGenerator(), 1000);
+
+        assertEquals(OutputFormat.EXCEL, writers.choose(1000, null));
+        assertEquals(OutputFormat.CSV_GZIP, writers.choose(1001, null));
+        assertEquals(OutputFormat.TSV, writers.choose(10, OutputFormat.TSV));
+        assertInstanceOf(ExcelGenerator.class, writers.get(OutputFormat.EXCEL));
+        assertEquals(OutputFormat.CSV_GZIP, OutputFormat.fromName(" CSV.GZ "));
+        assertNull(OutputFormat.fromName("pdf"));
+    }
+
+    private static List<String> write(ResultWriter writer, ExtractionResult result, boolean gzip) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(result, out);
+        byte[] bytes = out.toByteArray();
+        if (gzip) {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                bytes = in.readAllBytes();
+            }
+        }
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        assertTrue(text.endsWith("\r\n"));
+        return List.of(text.split("\r\n"));
+    }
+}
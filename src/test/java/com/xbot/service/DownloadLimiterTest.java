@@ -0,0 +1,76 @@
+package com.xbot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadLimiterTest {
+
+    @Test
+    void capsDownloadsPerUserAndInTotal() throws Exception {
+        DownloadLimiter limiter = new DownloadLimiter(3, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger maxRunningForUser1 = new AtomicInteger();
+        AtomicInteger runningForUser1 = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> downloads = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                long userId = i % 2 == 0 ? 1L : 2L + i;
+                downloads.add(executor.submit(() -> {
+                    try (DownloadLimiter.Permit ignored = limiter.acquire(userId)) {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        if (userId == 1L) {
+                            maxRunningForUser1.accumulateAndGet(runningForUser1.incrementAndGet(), Math::max);
+                        }
+                        release.await(5, TimeUnit.SECONDS);
+                        if (userId == 1L) {
+                            runningForUser1.decrementAndGet();
+                        }
+                        running.decrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (running.get() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+            assertEquals(3, running.get(), "no more than the global limit start");
+            release.countDown();
+            for (Future<?> download : downloads) {
+                download.get(5, TimeUnit.SECONDS);
+            }
+        }
+
+        assertEquals(3, maxRunning.get());
+        assertTrue(maxRunningForUser1.get() <= 2);
+        assertEquals(0, limiter.pending(1L), "idle users are dropped");
+        assertEquals(3, limiter.availableGlobal());
+    }
+
+    @Test
+    void releasesPermitOnlyOnce() throws Exception {
+        DownloadLimiter limiter = new DownloadLimiter(1, 1);
+        DownloadLimiter.Permit permit = limiter.acquire(7L);
+        assertEquals(1, limiter.pending(7L));
+        permit.close();
+        permit.close();
+
+        assertEquals(1, limiter.availableGlobal());
+        assertEquals(0, limiter.pending(7L));
+        limiter.acquire(7L).close();
+    }
+}
@@ -0,0 +1,82 @@
+package com.xbot.service;
+
+import com.xbot.model.ExtractionResult;
+import com.xbot.model.User;
+import com.xbot.model.UserIndex;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExcelGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void streamsRowsBeyondTheWindow() throws Exception {
+        Set<User> participants = new LinkedHashSet<>();
+        for (int i = 0; i < 250; i++) {
+            participants.add(new User("user" + i, null, "Имя " + i, "Имя " + i));
+        }
+        String longName = "Константин Константинопольский 🚀";
+        participants.add(new User("user999", null, longName, longName));
+        Set<User> mentions = Set.of(new User("bob", "bob", "Bob", "Bob"));
+
+        File file = new ExcelGenerator(10, 0)
+                .generateExcel(participants, mentions, Set.of(), "chat", tempDir.toString());
+
+        try (FileInputStream in = new FileInputStream(file); XSSFWorkbook workbook = new XSSFWorkbook(in)) {
+            assertEquals(2, workbook.getNumberOfSheets());
+            assertEquals(0, workbook.getSharedStringSource().getCount(), "strings are written inline");
+
+            Sheet sheet = workbook.getSheet("Участники");
+            assertEquals(251, sheet.getLastRowNum());
+            assertEquals("Telegram ID", sheet.getRow(0).getCell(1).getStringCellValue());
+            Row first = sheet.getRow(1);
+            assertEquals(1.0, first.getCell(0).getNumericCellValue());
+            assertEquals("user0", first.getCell(1).getStringCellValue());
+            assertEquals("tg://user?id=0", first.getCell(3).getStringCellValue());
+            assertEquals("Имя 249", sheet.getRow(250).getCell(2).getStringCellValue());
+
+            // Widths come from the longest value, or from the bold header when values are shorter
+            assertEquals(Math.round((ColumnWidths.displayWidth(longName) + 1.5f) * 256), sheet.getColumnWidth(2));
+            assertEquals(Math.round((ColumnWidths.displayWidth("Ссылка на профиль") * 1.1f + 1.5f) * 256),
+                    workbook.getSheet("Упоминания").getColumnWidth(3));
+
+            Row mention = workbook.getSheet("Упоминания").getRow(1);
+            assertEquals("https://t.me/bob", mention.getCell(3).getStringCellValue());
+        }
+    }
+
+    @Test
+    void writesActivityColumnsFromIndex() throws Exception {
+        UserIndex users = new UserIndex();
+        int alice = users.add("user1", null, "Alice", "Alice", UserIndex.PARTICIPANT);
+        users.recordMessage(alice, 1704090000L);
+        users.recordMessage(alice, 1704093600L);
+        users.add("user2", null, "Carol", "Carol", UserIndex.PARTICIPANT);
+
+        File file = new ExcelGenerator().generateExcel(new ExtractionResult(null, null, null, users),
+                "chat", tempDir.toString());
+
+        try (FileInputStream in = new FileInputStream(file); XSSFWorkbook workbook = new XSSFWorkbook(in)) {
+            Sheet sheet = workbook.getSheet("Участники");
+            assertEquals("Упоминаний", sheet.getRow(0).getCell(8).getStringCellValue());
+            Row row = sheet.getRow(1);
+            assertEquals(2.0, row.getCell(5).getNumericCellValue());
+            assertEquals("2024-01-01T06:20", row.getCell(6).getLocalDateTimeCellValue().toString());
+            assertEquals("2024-01-01T07:20", row.getCell(7).getLocalDateTimeCellValue().toString());
+            assertEquals("", sheet.getRow(2).getCell(6).getStringCellValue(), "no messages with a date");
+        }
+    }
+}
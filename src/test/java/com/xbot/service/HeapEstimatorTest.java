@@ -0,0 +1,164 @@
+package com.xbot.service;
+
+import com.xbot.model.ExtractionResult;
+import com.xbot.model.UploadedFile;
+import com.xbot.parser.ChatHistoryParser;
+import com.xbot.parser.ExportReader;
+import com.xbot.parser.JsonChatParser;
+import com.xbot.parser.ParserFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeapEstimatorTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void weighsFilesByFormat() {
+        long json = HeapEstimator.estimateParse(new UploadedFile("1", "result.json", "application/json", 10 * MB));
+        long html = HeapEstimator.estimateParse(new UploadedFile("2", "messages.html", "text/html", 10 * MB));
+        long jsonGz = HeapEstimator.estimateParse(new UploadedFile("3", "result.json.gz", "application/gzip", 10 * MB));
+        long zip = HeapEstimator.estimateParse(new UploadedFile("4", "export.zip", "application/zip", 10 * MB));
+
+        assertEquals(HeapEstimator.PARSE_OVERHEAD + 10 * MB / 100 * HeapEstimator.JSON_PERCENT, json);
+        assertEquals(HeapEstimator.PARSE_OVERHEAD + 10 * MB / 100 * HeapEstimator.HTML_PERCENT, html);
+        assertEquals(HeapEstimator.PARSE_OVERHEAD + 10 * MB * HeapEstimator.COMPRESSION_RATIO / 100
+                * HeapEstimator.JSON_PERCENT, jsonGz);
+        assertEquals(HeapEstimator.PARSE_OVERHEAD + 10 * MB * HeapEstimator.COMPRESSION_RATIO / 100
+                * Math.max(HeapEstimator.JSON_PERCENT, HeapEstimator.HTML_PERCENT), zip,
+                "a ZIP is charged as the heavier format");
+    }
+
+    @Test
+    void chargesChunksOfParallelJsonParse() {
+        long size = JsonChatParser.PARALLEL_THRESHOLD_BYTES;
+        long json = HeapEstimator.estimateParse(new UploadedFile("1", "result.json", "application/json", size));
+        long html = HeapEstimator.estimateParse(new UploadedFile("2", "messages.html", "text/html", size));
+        int chunks = JsonChatParser.chunksInFlight();
+
+        assertEquals(chunks == 0 ? 0 : (chunks + 1) * (long) JsonChatParser.CHUNK_BYTES
+                + chunks * (JsonChatParser.CHUNK_BYTES / 100 * HeapEstimator.INDEX_PERCENT), json - html);
+        assertEquals(0, HeapEstimator.chunkHeap(new UploadedFile("3", "result.json", "application/json", size - 1)));
+    }
+
+    @Test
+    void sumsSessionResultsWithOverhead() {
+        List<UploadedFile> files = List.of(
+                new UploadedFile("1", "messages.html", "text/html", MB),
+                new UploadedFile("2", "messages2.html", "text/html", MB));
+
+        assertEquals(HeapEstimator.JOB_OVERHEAD + 2 * (MB / 100 * HeapEstimator.INDEX_PERCENT),
+                HeapEstimator.estimate(files));
+    }
+
+    @Test
+    void everyParserHasItsOwnFactor() {
+        Set<String> formats = ParserFactory.getAllParsers().stream()
+                .map(ChatHistoryParser::getFormatName)
+                .collect(Collectors.toSet());
+
+        assertEquals(Set.of("JSON", "HTML"), formats, "a new parser needs its own factor");
+        assertEquals(HeapEstimator.JSON_PERCENT, HeapEstimator.percent("JSON"));
+        assertEquals(HeapEstimator.HTML_PERCENT, HeapEstimator.percent("HTML"));
+    }
+
+    @Test
+    void chargesTheParserThatReadsTheFile() throws Exception {
+        String html = "<html><body><div class=\"history\"><div class=\"message default clearfix\">"
+                + "<div class=\"body\"><div class=\"from_name\">Alice</div></div></div></div></body></html>";
+        String json = "{\"name\": \"Chat\", \"messages\": []}";
+
+        assertChargedAsParser(Files.writeString(tempDir.resolve("messages.html"), html));
+        assertChargedAsParser(Files.writeString(tempDir.resolve("result.json"), json));
+        assertChargedAsParser(gzip(tempDir.resolve("messages.html.gz"), html));
+        assertChargedAsParser(gzip(tempDir.resolve("result.json.gz"), json));
+    }
+
+    @Test
+    void indexOfExportWithNewUserInEveryMessageFitsTheFactor() throws Exception {
+        int messages = 20_000;
+        StringBuilder html = new StringBuilder("<html><body><div class=\"history\">");
+        StringBuilder json = new StringBuilder("{\"name\": \"Chat\", \"messages\": [");
+        for (int i = 0; i < messages; i++) {
+            html.append("<div class=\"message default clearfix\" id=\"message").append(i).append("\">")
+                    .append("<div class=\"body\"><div class=\"pull_right date details\" title=\"01.02.2024 10:00:00 UTC+03:00\">")
+                    .append("10:00</div><div class=\"from_name\">Пользователь ").append(i).append("</div>")
+                    .append("<div class=\"text\">Привет <a href=\"https://t.me/nick").append(i).append("\">@nick")
+                    .append(i).append("</a></div></div></div>\n");
+            json.append(i > 0 ? "," : "").append("{\"id\": ").append(i)
+                    .append(", \"type\": \"message\", \"date_unixtime\": \"1700000000\", \"from\": \"Пользователь ")
+                    .append(i).append("\", \"from_id\": \"user").append(100_000 + i)
+                    .append("\", \"text\": [\"Привет \", {\"type\": \"mention\", \"text\": \"@nick").append(i)
+                    .append("\"}], \"text_entities\": [{\"type\": \"plain\", \"text\": \"Привет \"}, ")
+                    .append("{\"type\": \"mention\", \"text\": \"@nick").append(i).append("\"}]}\n");
+        }
+        html.append("</div></body></html>");
+        json.append("]}");
+
+        assertIndexFits(Files.writeString(tempDir.resolve("messages.html"), html));
+        assertIndexFits(Files.writeString(tempDir.resolve("result.json"), json));
+        assertIndexFits(gzip(tempDir.resolve("messages.html.gz"), html.toString()));
+        assertIndexFits(gzip(tempDir.resolve("result.json.gz"), json.toString()));
+    }
+
+    /**
+     * The heap kept by the parse result stays within the share of the file the estimate charges for it.
+     */
+    private static void assertIndexFits(Path file) throws Exception {
+        // Loads the classes of the reader and the parser first, so they are not counted
+        ExportReader.read(file);
+        long before = usedHeap();
+        ExtractionResult result = ExportReader.read(file);
+        long retained = usedHeap() - before;
+        Reference.reachabilityFence(result);
+
+        UploadedFile upload = new UploadedFile("1", file.getFileName().toString(), null, Files.size(file));
+        long charged = HeapEstimator.estimate(List.of(upload)) - HeapEstimator.JOB_OVERHEAD;
+        assertTrue(retained <= charged, file.getFileName() + " keeps " + retained + " bytes, charged " + charged);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void assertChargedAsParser(Path file) throws Exception {
+        String name = file.getFileName().toString();
+        ChatHistoryParser parser;
+        try (InputStream in = Files.newInputStream(file)) {
+            InputStream content = new BufferedInputStream(name.endsWith(".gz") ? new GZIPInputStream(in) : in);
+            parser = ParserFactory.getParser(content, name);
+        }
+        UploadedFile upload = new UploadedFile("1", name, null, Files.size(file));
+
+        assertEquals(parser.getFormatName(), HeapEstimator.format(upload), name);
+    }
+
+    private static Path gzip(Path file, String content) throws Exception {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+}
@@ -0,0 +1,29 @@
+package com.xbot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PacedMessageSenderTest {
+
+    @Test
+    void spacesMessagesOfOneChatAndNotAcrossChats() {
+        PacedMessageSender sender = new PacedMessageSender(null, 1000, 35);
+        try {
+            long first = sender.reserveSlot("1");
+            long second = sender.reserveSlot("1");
+            long third = sender.reserveSlot("1");
+            long otherChat = sender.reserveSlot("2");
+
+            long second10ms = TimeUnit.MILLISECONDS.toNanos(10);
+            assertTrue(first < second10ms);
+            assertTrue(Math.abs(second - TimeUnit.SECONDS.toNanos(1)) < second10ms, "second " + second);
+            assertTrue(Math.abs(third - TimeUnit.SECONDS.toNanos(2)) < second10ms, "third " + third);
+            assertTrue(otherChat < second10ms, "other chats are not delayed");
+        } finally {
+            sender.shutdown();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.xbot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProcessingSchedulerTest {
+
+    @Test
+    void runsAtMostWorkersJobsAndReportsQueuePosition() throws Exception {
+        ProcessingScheduler scheduler = new ProcessingScheduler(2, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch firstTwo = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(4);
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        Runnable job = () -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            firstTwo.countDown();
+            try {
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+                done.countDown();
+            }
+        };
+
+        try {
+            assertEquals(0, scheduler.submit(1L, job, 1));
+            assertEquals(0, scheduler.submit(1L, job, 1));
+            assertEquals(1, scheduler.submit(1L, job, 1));
+            assertEquals(2, scheduler.submit(1L, job, 1));
+            assertThrows(RejectedExecutionException.class, () -> scheduler.submit(1L, job, 1), "queue is full");
+
+            assertTrue(firstTwo.await(5, TimeUnit.SECONDS));
+            assertEquals(2, scheduler.running());
+            assertEquals(2, scheduler.queued());
+
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(2, maxConcurrent.get());
+            waitUntil(() -> scheduler.running() == 0);
+            assertEquals(0, scheduler.submit(1L, () -> { }, 1), "free worker starts the job at once");
+        } finally {
+            release.countDown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void failedJobDoesNotStopWorker() throws Exception {
+        ProcessingScheduler scheduler = new ProcessingScheduler(1, 5);
+        CountDownLatch done = new CountDownLatch(1);
+        try {
+            scheduler.submit(1L, () -> {
+                throw new IllegalStateException("boom");
+            }, 1);
+            scheduler.submit(1L, done::countDown, 1);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            scheduler.shutdown();
+        }
+        assertThrows(RejectedExecutionException.class, () -> scheduler.submit(1L, () -> { }, 1));
+    }
+
+    @Test
+    void startsOnlyJobsThatFitTheHeapBudget() throws Exception {
+        // Budget 100: jobs above 25 are heavy and never take the last 25
+        ProcessingScheduler scheduler = new ProcessingScheduler(4, 10, 100);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch releaseRest = new CountDownLatch(1);
+        CountDownLatch releaseHuge = new CountDownLatch(1);
+        List<String> started = new CopyOnWriteArrayList<>();
+        try {
+            assertEquals(0, scheduler.submit(1L, job("a", started, releaseFirst), 60));
+            assertEquals(1, scheduler.submit(2L, job("b", started, releaseRest), 50), "60 + 50 exceeds the budget");
+            assertEquals(0, scheduler.submit(3L, job("c", started, releaseRest), 10), "small job runs next to heavy ones");
+            waitUntil(() -> started.size() == 2);
+            assertEquals(70, scheduler.reservedHeap());
+
+            releaseFirst.countDown();
+            waitUntil(() -> started.size() == 3);
+            assertEquals(Set.of("a", "b", "c"), Set.copyOf(started));
+            assertEquals(60, scheduler.reservedHeap());
+
+            releaseRest.countDown();
+            waitUntil(() -> scheduler.running() == 0);
+            assertEquals(0, scheduler.reservedHeap());
+            assertEquals(0, scheduler.submit(1L, job("huge", started, releaseHuge), 500),
+                    "a job larger than the budget runs when nothing else does");
+            assertEquals(75, scheduler.reservedHeap(), "and leaves the small jobs' share free");
+        } finally {
+            releaseFirst.countDown();
+            releaseRest.countDown();
+            releaseHuge.countDown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void servesLightUserAheadOfQueuedHeavyJobs() throws Exception {
+        ProcessingScheduler scheduler = new ProcessingScheduler(1, 10, 1000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch open = new CountDownLatch(0);
+        List<String> started = new CopyOnWriteArrayList<>();
+        try {
+            assertEquals(0, scheduler.submit(1L, job("heavy1", started, release), 100));
+            assertEquals(1, scheduler.submit(1L, job("heavy2", started, open), 100));
+            assertEquals(2, scheduler.submit(1L, job("heavy3", started, open), 100));
+            assertEquals(1, scheduler.submit(2L, job("light", started, open), 10), "light job goes first");
+            assertEquals(3, scheduler.submit(3L, job("medium", started, open), 150),
+                    "third user lands between the heavy user's queued jobs");
+
+            release.countDown();
+            waitUntil(() -> started.size() == 5);
+            assertEquals(List.of("heavy1", "light", "heavy2", "medium", "heavy3"), started);
+        } finally {
+            release.countDown();
+            scheduler.shutdown();
+        }
+    }
+
+    private static Runnable job(String name, List<String> started, CountDownLatch release) {
+        return () -> {
+            started.add(name);
+            try {
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached in time");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.xbot.service;
+
+import com.xbot.exception.BusySessionException;
+import com.xbot.model.ExtractionResult;
+import com.xbot.model.UploadedFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionServiceTest {
+
+    private final SessionService sessionService = new SessionService(10, 30, 60_000);
+
+    @AfterEach
+    void tearDown() {
+        sessionService.stopAllTimers();
+    }
+
+    @Test
+    void handsEveryFileToCallbackOnArrival() {
+        List<String> added = new ArrayList<>();
+        sessionService.setProcessingCallback(new SessionService.ProcessingCallback() {
+            @Override
+            public void onFileAdded(Long userId, Long chatId, UploadedFile file) {
+                added.add(file.getFileName());
+            }
+
+            @Override
+            public boolean onProcessingBegin(Long userId, Long chatId, List<UploadedFile> files) {
+                fail("processing must wait for the timer");
+                return false;
+            }
+
+            @Override
+            public void onProcessingComplete(Long chatId) {
+            }
+
+            @Override
+            public void onProcessingError(Long chatId) {
+            }
+        });
+
+        sessionService.addFile(1L, 2L, new UploadedFile("id1", "messages.html", "text/html", 10));
+        sessionService.addFile(1L, 2L, new UploadedFile("id2", "messages2.html", "text/html", 10));
+
+        assertEquals(List.of("messages.html", "messages2.html"), added);
+    }
+
+    @Test
+    void debouncesUploadsOnSharedScheduler() throws Exception {
+        SessionService service = new SessionService(10, 30, 150);
+        AtomicInteger runs = new AtomicInteger();
+        AtomicLong processedFiles = new AtomicLong();
+        AtomicLong startedAt = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(2);
+        service.setProcessingCallback(new SessionService.ProcessingCallback() {
+            @Override
+            public void onFileAdded(Long userId, Long chatId, UploadedFile file) {
+            }
+
+            @Override
+            public boolean onProcessingBegin(Long userId, Long chatId, List<UploadedFile> files) {
+                if (userId == 1L) {
+                    runs.incrementAndGet();
+                    processedFiles.set(files.size());
+                    startedAt.set(System.nanoTime());
+                }
+                return true;
+            }
+
+            @Override
+            public void onProcessingComplete(Long chatId) {
+                done.countDown();
+            }
+
+            @Override
+            public void onProcessingError(Long chatId) {
+            }
+        });
+
+        try {
+            long lastUpload = 0;
+            for (int i = 0; i < 4; i++) {
+                lastUpload = System.nanoTime();
+                service.addFile(1L, 2L, new UploadedFile("id" + i, "messages" + i + ".html", "text/html", 10));
+                Thread.sleep(80);
+            }
+            service.addFile(3L, 4L, new UploadedFile("other", "result.json", "application/json", 10));
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(1, runs.get(), "uploads inside the window move the deadline");
+            assertEquals(4, processedFiles.get());
+            assertTrue(startedAt.get() - lastUpload >= TimeUnit.MILLISECONDS.toNanos(150),
+                    "started " + TimeUnit.NANOSECONDS.toMillis(startedAt.get() - lastUpload) + " ms after the last upload");
+        } finally {
+            service.stopAllTimers();
+        }
+    }
+
+    @Test
+    void keepsSeparateSessionsPerChat() {
+        sessionService.increaseFileCount(1L, 10L);
+        sessionService.increaseFileCount(1L, 10L);
+        sessionService.setUploadBegin(1L, 20L);
+
+        assertEquals(2, sessionService.getFileCount(1L, 10L));
+        assertEquals(0, sessionService.getFileCount(1L, 20L));
+        assertTrue(sessionService.isIdle(1L, 10L));
+        assertFalse(sessionService.isIdle(1L, 20L));
+    }
+
+    @Test
+    void processesOutsideTheLockAndCleanupSkipsBusySessions() throws Exception {
+        // Timeout 0 minutes: every idle session is old enough for cleanup
+        SessionService service = new SessionService(10, 0, 10);
+        CountDownLatch processing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        List<Integer> seenFiles = new ArrayList<>();
+        service.setProcessingCallback(new SessionService.ProcessingCallback() {
+            @Override
+            public void onFileAdded(Long userId, Long chatId, UploadedFile file) {
+            }
+
+            @Override
+            public boolean onProcessingBegin(Long userId, Long chatId, List<UploadedFile> files) throws Exception {
+                seenFiles.add(files.size());
+                processing.countDown();
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+                return true;
+            }
+
+            @Override
+            public void onProcessingComplete(Long chatId) {
+                finished.countDown();
+            }
+
+            @Override
+            public void onProcessingError(Long chatId) {
+            }
+        });
+
+        try {
+            service.addFile(1L, 2L, new UploadedFile("id1", "messages.html", "text/html", 10));
+            assertTrue(processing.await(5, TimeUnit.SECONDS));
+
+            // The job is blocked inside the callback; other calls must not wait for it
+            assertTrue(service.isBusy(1L, 2L));
+            assertThrows(BusySessionException.class,
+                    () -> service.addFile(1L, 2L, new UploadedFile("id2", "late.html", "text/html", 10)));
+            service.increaseFileCount(3L, 4L);
+            assertEquals(1, service.getFileCount(3L, 4L));
+
+            Thread.sleep(5);
+            service.cleanupOldSessions();
+            assertTrue(service.isBusy(1L, 2L), "session being processed survives cleanup");
+            assertEquals(0, service.getFileCount(3L, 4L), "idle session was removed and recreated");
+
+            release.countDown();
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of(1), seenFiles);
+        } finally {
+            release.countDown();
+            service.stopAllTimers();
+        }
+    }
+
+    @Test
+    void startsProcessingOnlyAfterParsesFinish() throws Exception {
+        SessionService service = new SessionService(10, 30, 10);
+        CompletableFuture<ExtractionResult> parse = new CompletableFuture<>();
+        CountDownLatch processing = new CountDownLatch(1);
+        service.setProcessingCallback(new SessionService.ProcessingCallback() {
+            @Override
+            public void onFileAdded(Long userId, Long chatId, UploadedFile file) {
+                file.setParseResult(parse);
+            }
+
+            @Override
+            public boolean onProcessingBegin(Long userId, Long chatId, List<UploadedFile> files) {
+                assertTrue(parse.isDone(), "the report job must not wait for parses on a worker");
+                processing.countDown();
+                return true;
+            }
+
+            @Override
+            public void onProcessingComplete(Long chatId) {
+            }
+
+            @Override
+            public void onProcessingError(Long chatId) {
+            }
+        });
+
+        try {
+            service.addFile(1L, 2L, new UploadedFile("id1", "messages.html", "text/html", 10));
+            assertFalse(processing.await(200, TimeUnit.MILLISECONDS));
+            assertTrue(service.isBusy(1L, 2L));
+
+            parse.complete(new ExtractionResult(Set.of(), Set.of(), Set.of()));
+            assertTrue(processing.await(5, TimeUnit.SECONDS));
+        } finally {
+            service.stopAllTimers();
+        }
+    }
+
+    @Test
+    void notifiesFileAddedOutsideSessionLock() throws Exception {
+        SessionService service = new SessionService(10, 30, 10_000);
+        AtomicBoolean sessionFree = new AtomicBoolean();
+        service.setProcessingCallback(new SessionService.ProcessingCallback() {
+            @Override
+            public void onFileAdded(Long userId, Long chatId, UploadedFile file) {
+                // Another thread reads the session while the callback runs
+                CompletableFuture<Integer> files = CompletableFuture.supplyAsync(() -> service.getFileCount(userId, chatId));
+                try {
+                    files.get(5, TimeUnit.SECONDS);
+                    sessionFree.set(true);
+                } catch (Exception e) {
+                    files.cancel(true);
+                }
+            }
+
+            @Override
+            public boolean onProcessingBegin(Long userId, Long chatId, List<UploadedFile> files) {
+                return true;
+            }
+
+            @Override
+            public void onProcessingComplete(Long chatId) {
+            }
+
+            @Override
+            public void onProcessingError(Long chatId) {
+            }
+        });
+
+        try {
+            service.addFile(1L, 2L, new UploadedFile("id1", "messages.html", "text/html", 10));
+
+            assertTrue(sessionFree.get(), "the session is not locked while the callback runs");
+        } finally {
+            service.stopAllTimers();
+        }
+    }
+
+    @Test
+    void dropsFileWhoseParseIsRejected() throws Exception {
+        SessionService service = new SessionService(10, 30, 10);
+        List<Integer> seenFiles = new CopyOnWriteArrayList<>();
+        CountDownLatch finished = new CountDownLatch(1);
+        service.setProcessingCallback(new SessionService.ProcessingCallback() {
+            @Override
+            public void onFileAdded(Long userId, Long chatId, UploadedFile file) {
+                if (file.getFileName().equals("rejected.html")) {
+                    throw new RejectedExecutionException("queue is full");
+                }
+            }
+
+            @Override
+            public boolean onProcessingBegin(Long userId, Long chatId, List<UploadedFile> files) {
+                seenFiles.add(files.size());
+                return true;
+            }
+
+            @Override
+            public void onProcessingComplete(Long chatId) {
+                finished.countDown();
+            }
+
+            @Override
+            public void onProcessingError(Long chatId) {
+            }
+        });
+
+        try {
+            service.addFile(1L, 2L, new UploadedFile("id1", "messages.html", "text/html", 10));
+            assertThrows(RejectedExecutionException.class,
+                    () -> service.addFile(1L, 2L, new UploadedFile("id2", "rejected.html", "text/html", 10)));
+
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of(1), seenFiles);
+        } finally {
+            service.stopAllTimers();
+        }
+    }
+}
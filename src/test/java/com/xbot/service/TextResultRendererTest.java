@@ -0,0 +1,63 @@
+package com.xbot.service;
+
+import com.xbot.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextResultRendererTest {
+
+    @Test
+    void rendersSectionsInOneMessage() {
+        Set<User> participants = new LinkedHashSet<>(List.of(
+                new User("user1", null, "Alice", "Alice"),
+                new User("Bob")));
+        Set<User> mentions = Set.of(new User("carol", "carol", "Carol", "Carol"));
+        Set<User> channels = Set.of(new User("channel1", null, "News", "News"));
+
+        List<String> chunks = new TextResultRenderer().render(participants, mentions, channels);
+
+        assertEquals(List.of("""
+                👥 Найдено: 4
+
+                📝 Участники (2):
+                1. Alice (tg://user?id=1)
+                2. Bob (@Bob)
+
+                💬 Упоминания (1):
+                1. Carol (@carol)
+
+                📢 Каналы (1):
+                1. News
+                """), chunks);
+    }
+
+    @Test
+    void splitsOnLineBoundariesWithinLimit() {
+        Set<User> participants = new LinkedHashSet<>();
+        for (int i = 0; i < 300; i++) {
+            String name = "Очень длинное имя участника номер " + i;
+            participants.add(new User("user" + i, null, name, name));
+        }
+        String huge = "😀".repeat(3000);
+        participants.add(new User("user999", null, huge, huge));
+
+        List<String> chunks = new TextResultRenderer().render(participants, Set.of(), Set.of());
+
+        assertTrue(chunks.size() > 3);
+        StringBuilder joined = new StringBuilder();
+        for (String chunk : chunks) {
+            assertTrue(chunk.length() <= TextResultRenderer.MESSAGE_LIMIT, "chunk length " + chunk.length());
+            assertFalse(Character.isHighSurrogate(chunk.charAt(chunk.length() - 1)));
+            joined.append(chunk);
+        }
+        assertTrue(chunks.get(0).endsWith("\n"), "normal lines are not cut");
+        String text = joined.toString();
+        assertTrue(text.contains("\n300. Очень длинное имя участника номер 299 (tg://user?id=299)\n"));
+        assertTrue(text.endsWith("301. " + huge + " (tg://user?id=999)\n"));
+    }
+}
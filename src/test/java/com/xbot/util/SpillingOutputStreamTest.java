@@ -0,0 +1,60 @@
+package com.xbot.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpillingOutputStreamTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keepsSmallOutputInMemory() throws Exception {
+        SpillingOutputStream out = new SpillingOutputStream(8, tempDir, ".csv");
+        try (out) {
+            out.write("abc".getBytes());
+            out.write('d');
+        }
+
+        assertTrue(out.isInMemory());
+        assertNull(out.getFile());
+        assertEquals(4, out.size());
+        try (InputStream in = out.toInputStream()) {
+            assertEquals("abcd", new String(in.readAllBytes()));
+        }
+        out.delete();
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void spillsToTempFileAboveLimitAndDeletesIt() throws Exception {
+        SpillingOutputStream out = new SpillingOutputStream(4, tempDir, ".csv");
+        try (out) {
+            out.write("abc".getBytes());
+            out.write("defgh".getBytes());
+            out.write('i');
+        }
+
+        assertFalse(out.isInMemory());
+        assertEquals(9, out.size());
+        File file = out.getFile();
+        assertEquals(tempDir, file.toPath().getParent());
+        assertTrue(file.getName().endsWith(".csv"));
+        assertEquals("abcdefghi", Files.readString(file.toPath()));
+        assertThrows(IllegalStateException.class, out::toInputStream);
+        assertThrows(IOException.class, () -> out.write('x'));
+
+        out.delete();
+        assertFalse(file.exists());
+    }
+}